@@ -0,0 +1,22 @@
+package models;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * runs the benchmarks with the standard JMH command line options, and always reports allocations per operation
+ * e.g. java -jar target/benchmarks.jar OrderedArrayListBenchmark -p size=1000,1000000
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
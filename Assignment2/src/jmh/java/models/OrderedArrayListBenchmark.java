@@ -0,0 +1,106 @@
+package models;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measures the search, merge and sort operations of an OrderedArrayList of products ordered by barcode
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OrderedArrayListBenchmark {
+    private static final Comparator<Product> BY_BARCODE = Comparator.comparing(Product::getBarcode);
+    private static final int NUM_PROBES = 4096;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean searchIndex;
+
+    OrderedArrayList<Product> products;
+    List<Product> sortedProducts;
+    Product[] probes;
+    int nextProbe;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(size);
+        sortedProducts = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            // leave gaps between the barcodes, such that new barcodes can be inserted between existing ones
+            sortedProducts.add(new Product(8_700_000_000_000L + 7L * index, "product " + index, 1.0));
+        }
+
+        List<Product> shuffledProducts = new ArrayList<>(sortedProducts);
+        Collections.shuffle(shuffledProducts, random);
+        products = new OrderedArrayList<>(BY_BARCODE);
+        products.addAll(shuffledProducts);
+        products.sort();
+        if (searchIndex) products.setSearchKey(Product::getBarcode);
+
+        probes = new Product[NUM_PROBES];
+        for (int index = 0; index < NUM_PROBES; index++) {
+            probes[index] = new Product(sortedProducts.get(random.nextInt(size)).getBarcode());
+        }
+    }
+
+    private Product nextProbe() {
+        nextProbe = (nextProbe + 1) & (NUM_PROBES - 1);
+        return probes[nextProbe];
+    }
+
+    @Benchmark
+    public int indexOfByIterativeBinarySearch() {
+        return products.indexOfByIterativeBinarySearch(nextProbe());
+    }
+
+    @Benchmark
+    public int indexOfByRecursiveBinarySearch() {
+        return products.indexOfByRecursiveBinarySearch(nextProbe());
+    }
+
+    @Benchmark
+    public boolean merge() {
+        return products.merge(nextProbe(), (p1, p2) -> p1);
+    }
+
+    /**
+     * a sorted list with one percent of new items appended after the sorted section
+     */
+    @State(Scope.Thread)
+    public static class AppendedList {
+        OrderedArrayList<Product> list;
+
+        @Setup(Level.Invocation)
+        public void setup(OrderedArrayListBenchmark benchmark) {
+            Random random = new Random(benchmark.size);
+            list = new OrderedArrayList<>(BY_BARCODE);
+            list.addAll(benchmark.sortedProducts);
+            list.sort();
+            for (int index = 0; index < Math.max(1, benchmark.size / 100); index++) {
+                list.add(new Product(8_700_000_000_000L + random.nextInt(7 * benchmark.size)));
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 10, batchSize = 1)
+    public OrderedArrayList<Product> sort(AppendedList appended) {
+        appended.list.sort();
+        return appended.list;
+    }
+}
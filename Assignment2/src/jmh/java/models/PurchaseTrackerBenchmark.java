@@ -0,0 +1,50 @@
+package models;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * measures the end-to-end import of a synthetic purchases vault with numLines purchase lines in total,
+ * as generated by VaultGenerator with 10,000 Zipf-skewed products, 10 days, 2 cities and 5 branches per city
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class PurchaseTrackerBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int numLines;
+
+    Path vault;
+    PurchaseTracker purchaseTracker;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        vault = Files.createTempDirectory("vault");
+        new VaultGenerator().setSeed(numLines).generate(vault, numLines);
+
+        purchaseTracker = new PurchaseTracker();
+        purchaseTracker.importProductsFromVault(vault.resolve("products.txt"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(vault)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public long importPurchasesFromVault() {
+        purchaseTracker.importPurchasesFromVault(vault.resolve("purchases"));
+        return purchaseTracker.getTotalVolume();
+    }
+}
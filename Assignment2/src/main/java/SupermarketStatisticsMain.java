@@ -1,7 +1,6 @@
 import models.Purchase;
 import models.PurchaseTracker;
-
-import java.util.Comparator;
+import models.SalesQuery;
 
 public class SupermarketStatisticsMain {
 
@@ -15,15 +14,15 @@ public class SupermarketStatisticsMain {
         purchaseTracker.importPurchasesFromVault("/purchases");
 
         purchaseTracker.showTops(5, "worst sales volume",
-                Comparator.comparing(Purchase::getCount)
+                Purchase::getCount, false
         );
 
         purchaseTracker.showTops(5, "best sales revenue",
-                (p1, p2) -> {
-            double value1 = p1.getCount()*p1.getProduct().getPrice();
-            double value2 = p2.getCount()*p2.getProduct().getPrice();
-            return (int) Math.signum(value2-value1);
-                }
+                Purchase::getRevenueCents, true
+        );
+
+        purchaseTracker.showQuery("brands with best sales revenue",
+                SalesQuery.builder().groupBy(SalesQuery.Grouping.BRAND).rankBy(SalesQuery.Measure.REVENUE).limit(5).build()
         );
 
         purchaseTracker.showTotals();
@@ -0,0 +1,71 @@
+package models;
+
+/**
+ * a Bloom filter over long keys, such as the barcodes of a product catalog.
+ * mightContain never rejects a key that has been added, and accepts a key that has not been added
+ * with a small false positive rate, which is about 1% at 10 bits per key.
+ * Every key sets or probes numHashes bits, whose positions are derived from two halves of one 64-bit hash.
+ */
+public class BloomFilter {
+    public static final int DEFAULT_BITS_PER_KEY = 10;
+
+    private final long[] bits;
+    private final long numBits;
+    private final int numHashes;
+
+    /**
+     * @param expectedNumKeys the number of keys for which the false positive rate is dimensioned
+     * @param bitsPerKey      the number of bits per expected key
+     */
+    public BloomFilter(int expectedNumKeys, int bitsPerKey) {
+        long words = Math.max(1, ((long) Math.max(1, expectedNumKeys) * bitsPerKey + 63) / 64);
+        this.bits = new long[Math.toIntExact(words)];
+        this.numBits = words * 64;
+        // the optimal number of hashes is ln(2) times the number of bits per key
+        this.numHashes = Math.max(1, (int) Math.round(bitsPerKey * Math.log(2)));
+    }
+
+    public BloomFilter(int expectedNumKeys) {
+        this(expectedNumKeys, DEFAULT_BITS_PER_KEY);
+    }
+
+    public void add(long key) {
+        long hash = mix(key);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int probe = 0; probe < this.numHashes; probe++) {
+            long position = Integer.toUnsignedLong(hash1 + probe * hash2) % this.numBits;
+            this.bits[(int) (position >>> 6)] |= 1L << position;
+        }
+    }
+
+    /**
+     * @param key
+     * @return false if the key has certainly not been added, true if it probably has been added
+     */
+    public boolean mightContain(long key) {
+        long hash = mix(key);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int probe = 0; probe < this.numHashes; probe++) {
+            long position = Integer.toUnsignedLong(hash1 + probe * hash2) % this.numBits;
+            if ((this.bits[(int) (position >>> 6)] & (1L << position)) == 0) return false;
+        }
+        return true;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    private static long mix(long key) {
+        // the finalizer of the splitmix64 generator, like LongKeyIndex.hash, but keeping all 64 bits
+        key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+        return key ^ (key >>> 31);
+    }
+}
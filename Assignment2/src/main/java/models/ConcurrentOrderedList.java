@@ -0,0 +1,281 @@
+package models;
+
+import java.util.AbstractList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.ToLongFunction;
+
+/**
+ * a thread-safe ordered list, which is backed by a concurrent skip list keyed by the ordening comparator.
+ * The list holds at most one item per key and always iterates its items in the order of the ordening.
+ * Merges are atomic per key, so several threads can merge items into the same list concurrently,
+ * and threads that merge items with different keys rarely block each other.
+ * Positional access by index requires a traversal of the skip list and therefore takes O(n) time;
+ * items cannot be inserted or replaced at a given index, because their position follows from the ordening.
+ * Changes of an item take one of a fixed set of private locks, which is selected by the identity of the item,
+ * so items that callers synchronize on elsewhere cannot interfere with the list, and only unrelated items that
+ * happen to share a lock contend. No thread ever holds two of these locks at once.
+ * A new item is locked while it is published and added to the aggregates, which is the same lock that merges
+ * into that item take, so a concurrent merge never sees the item before its values have been aggregated.
+ */
+public class ConcurrentOrderedList<E>
+        extends AbstractList<E>
+        implements OrderedList<E> {
+    private static final int NUM_LOCKS = 64;            // a power of two
+
+    private final Comparator<? super E> ordening;
+    private final ConcurrentSkipListMap<E, E> items;    // every item is mapped by itself as the key
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong version = new AtomicLong();
+    private final List<Aggregate<E>> aggregates = new CopyOnWriteArrayList<>();
+    private final Object[] locks = new Object[NUM_LOCKS];  // the lock stripes of the changes of the items
+
+    private static class Aggregate<E> {
+        final String name;
+        final ToLongFunction<? super E> mapper;
+        final LongAdder value = new LongAdder();
+
+        Aggregate(String name, ToLongFunction<? super E> mapper) {
+            this.name = name;
+            this.mapper = mapper;
+        }
+    }
+
+    public ConcurrentOrderedList(Comparator<? super E> ordening) {
+        this.ordening = ordening;
+        this.items = new ConcurrentSkipListMap<>(ordening);
+        for (int index = 0; index < NUM_LOCKS; index++) {
+            this.locks[index] = new Object();
+        }
+    }
+
+    @Override
+    public Comparator<? super E> getOrdening() {
+        return this.ordening;
+    }
+
+    @Override
+    public int size() {
+        return this.size.get();
+    }
+
+    @Override
+    public E get(int index) {
+        int position = 0;
+        for (E item : this.items.values()) {
+            if (position++ == index) return item;
+        }
+        throw new IndexOutOfBoundsException(index);
+    }
+
+    /**
+     * items cannot be replaced at an index, because their position follows from the ordening; use merge instead
+     */
+    @Override
+    public E set(int index, E item) {
+        throw new UnsupportedOperationException(
+                "Items of a ConcurrentOrderedList cannot be replaced by index, merge the item instead");
+    }
+
+    /**
+     * adds the item, unless the list already holds an item with the same key
+     *
+     * @param item
+     * @return whether the item has been added
+     */
+    @Override
+    public boolean add(E item) {
+        synchronized (this.lockOf(item)) {
+            if (this.items.putIfAbsent(item, item) != null) {
+                return false;
+            }
+            this.size.incrementAndGet();
+            this.updateAggregates(item, 1);
+            return true;
+        }
+    }
+
+    @Override
+    public E remove(int index) {
+        while (true) {
+            E item = this.get(index);
+            // a concurrent removal or replacement of the item at the index requires another look at that index
+            if (this.remove(item)) return item;
+        }
+    }
+
+    @Override
+    public boolean remove(Object item) {
+        while (true) {
+            E matchedItem = this.items.get(item);
+            if (matchedItem == null) {
+                return false;
+            }
+            // removals lock the matched item like merges do, such that a merge is never applied to a removed item
+            synchronized (this.lockOf(matchedItem)) {
+                if (this.items.remove(item, matchedItem)) {
+                    this.size.decrementAndGet();
+                    this.updateAggregates(matchedItem, -1);
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * removes all items
+     * Items which are added concurrently with the clear may or may not survive it.
+     */
+    @Override
+    public void clear() {
+        for (E item : this.items.values()) {
+            this.remove(item);
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        Iterator<E> values = this.items.values().iterator();
+        // the iterator is weakly consistent and does not support removal
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return values.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return values.next();
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<E> spliterator() {
+        return this.items.values().spliterator();
+    }
+
+    @Override
+    public boolean contains(Object item) {
+        return this.items.containsKey(item);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int indexOf(Object item) {
+        if (item == null || !this.items.containsKey(item)) {
+            return -1;
+        }
+        return this.items.headMap((E) item).size();
+    }
+
+    @Override
+    public int indexOfByBinarySearch(E searchItem) {
+        return this.indexOf(searchItem);
+    }
+
+    /**
+     * the list is always sorted by its ordening
+     */
+    @Override
+    public void sort() {
+    }
+
+    /**
+     * finds a match of newItem in the list and applies the merger operator with the newItem to that match,
+     * or adds the newItem to the list if no match is found.
+     * The merge is atomic for the key of newItem: merges of the same key are applied one at a time,
+     * even if the merger changes the matched item in place.
+     *
+     * @param newItem
+     * @param merger  a function that takes two items and returns an item that contains the merged content of
+     *                the two items according to some merging rule.
+     * @return whether a new item was added to the list or not
+     */
+    @Override
+    public boolean merge(E newItem, BinaryOperator<E> merger) {
+        if (newItem == null) return false;
+
+        while (true) {
+            E matchedItem;
+            // concurrent merges into the new item wait until its own values have been added to the aggregates
+            synchronized (this.lockOf(newItem)) {
+                matchedItem = this.items.putIfAbsent(newItem, newItem);
+                if (matchedItem == null) {
+                    this.size.incrementAndGet();
+                    this.updateAggregates(newItem, 1);
+                    return true;
+                }
+            }
+
+            synchronized (this.lockOf(matchedItem)) {
+                // a concurrent merge may have replaced or removed the matched item before the lock was acquired
+                if (this.items.get(newItem) != matchedItem) continue;
+
+                long[] valuesBefore = new long[this.aggregates.size()];
+                for (int index = 0; index < valuesBefore.length; index++) {
+                    valuesBefore[index] = this.aggregates.get(index).mapper.applyAsLong(matchedItem);
+                }
+
+                E mergedItem = merger.apply(matchedItem, newItem);
+                if (mergedItem != matchedItem) {
+                    this.items.put(mergedItem, mergedItem);
+                }
+
+                for (int index = 0; index < valuesBefore.length; index++) {
+                    Aggregate<E> aggregate = this.aggregates.get(index);
+                    aggregate.value.add(aggregate.mapper.applyAsLong(mergedItem) - valuesBefore[index]);
+                }
+                this.version.incrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * registers a named aggregate, which is maintained by all changes of the list
+     * Aggregates shall be registered before the list is shared between threads.
+     */
+    @Override
+    public void registerAggregate(String name, ToLongFunction<? super E> mapper) {
+        Aggregate<E> aggregate = new Aggregate<>(name, mapper);
+        for (E item : this.items.values()) {
+            aggregate.value.add(mapper.applyAsLong(item));
+        }
+        this.aggregates.removeIf(registered -> registered.name.equals(name));
+        this.aggregates.add(aggregate);
+    }
+
+    @Override
+    public long getVersion() {
+        return this.version.get();
+    }
+
+    @Override
+    public long getAggregate(String name) {
+        for (Aggregate<E> aggregate : this.aggregates) {
+            if (aggregate.name.equals(name)) return aggregate.value.sum();
+        }
+        throw new IllegalArgumentException("No aggregate has been registered with name " + name);
+    }
+
+    private Object lockOf(Object item) {
+        int hash = System.identityHashCode(item);
+        return this.locks[(hash ^ (hash >>> 16)) & (NUM_LOCKS - 1)];
+    }
+
+    private void updateAggregates(E item, int sign) {
+        this.version.incrementAndGet();
+        for (Aggregate<E> aggregate : this.aggregates) {
+            aggregate.value.add(sign * aggregate.mapper.applyAsLong(item));
+        }
+    }
+}
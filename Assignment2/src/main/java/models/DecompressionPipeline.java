@@ -0,0 +1,138 @@
+package models;
+
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * decompresses gzip compressed text files on a pool of background threads, ahead of the thread that parses their lines.
+ * The files are read and decoded by their Vault, so their lines are the same as when the vault reads them directly.
+ * Every submitted file streams its lines in batches through a small bounded queue,
+ * so at most numThreads files are decompressed at the same time, each with at most QUEUE_CAPACITY batches in memory.
+ * Files are decompressed in the order of submission, and shall be consumed in that order too.
+ */
+public class DecompressionPipeline implements Closeable {
+    private static final int BATCH_SIZE = 1024;
+    private static final int QUEUE_CAPACITY = 4;
+    private static final List<String> END_OF_FILE = new ArrayList<>();
+
+    private final ExecutorService executor;
+
+    public DecompressionPipeline(int numThreads) {
+        this.executor = Executors.newFixedThreadPool(numThreads, runnable -> {
+            Thread thread = new Thread(runnable, "decompression");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * the lines of a compressed file, which become available while the file is being decompressed
+     */
+    public static class DecompressedFile {
+        private final Vault vault;
+        private final Path path;
+        private final BlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private volatile Throwable failure;     // the failure of the decompression, which is seen after END_OF_FILE
+
+        private DecompressedFile(Vault vault, Path path) {
+            this.vault = vault;
+            this.path = path;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * passes every line of the file to the consumer, waiting for the lines that are still being decompressed
+         *
+         * @param consumer
+         */
+        public void forEachLine(Consumer<String> consumer) {
+            try {
+                for (List<String> batch = this.batches.take(); batch != END_OF_FILE; batch = this.batches.take()) {
+                    batch.forEach(consumer);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Decompression of " + this.path + " has been interrupted");
+            }
+            if (this.failure instanceof UncheckedIOException) {
+                throw new UncheckedIOException("Cannot decompress " + this.path,
+                        ((UncheckedIOException) this.failure).getCause());
+            }
+            if (this.failure != null) {
+                throw new RuntimeException("Cannot decompress " + this.path, this.failure);
+            }
+        }
+
+        private void decompress() {
+            boolean cancelled = false;
+            try {
+                List<String> batch = new ArrayList<>(BATCH_SIZE);
+                this.vault.forEachLine(this.path, line -> {
+                    batch.add(line);
+                    if (batch.size() == BATCH_SIZE) {
+                        this.put(new ArrayList<>(batch));
+                        batch.clear();
+                    }
+                });
+                if (!batch.isEmpty()) this.put(batch);
+            } catch (CancellationException e) {
+                // the pipeline has been closed, nobody waits for the remaining lines
+                cancelled = true;
+            } catch (RuntimeException | Error e) {
+                this.failure = e;
+            } finally {
+                // also after a failure, such that the consumer stops waiting and finds the failure
+                if (!cancelled) this.endOfFile();
+            }
+        }
+
+        private void put(List<String> batch) {
+            try {
+                this.batches.put(batch);
+            } catch (InterruptedException e) {
+                throw new CancellationException("Decompression of " + this.path + " has been cancelled");
+            }
+        }
+
+        private void endOfFile() {
+            try {
+                this.batches.put(END_OF_FILE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * starts the decompression of a file as soon as a thread of the pipeline is available
+     *
+     * @param vault the vault of the file, which shall stay open until the lines have been consumed
+     * @param path  a gzip compressed text file of the vault
+     * @return the lines of the file
+     */
+    public DecompressedFile submit(Vault vault, Path path) {
+        DecompressedFile decompressedFile = new DecompressedFile(vault, path);
+        this.executor.execute(decompressedFile::decompress);
+        return decompressedFile;
+    }
+
+    /**
+     * stops all decompressions, including those of files of which not all lines have been consumed
+     */
+    @Override
+    public void close() {
+        this.executor.shutdownNow();
+    }
+}
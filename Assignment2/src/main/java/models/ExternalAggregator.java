@@ -0,0 +1,263 @@
+package models;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * sums counts and amounts per long key, such as the volumes and revenues in cents of purchases per barcode,
+ * for more keys than fit in the memory budget.
+ * The sums are accumulated in a hash index of at most maxKeysInMemory keys. Whenever that budget is reached,
+ * the keys and their sums are sorted and spilled as a run to a temporary file, and the index starts over.
+ * Finally, all runs are merged by a k-way merge on the keys, which reports the totals of every key in ascending order
+ * while holding only one entry of every run in memory. At most maxFanIn runs are open at the same time:
+ * if there are more runs, the oldest runs are first merged into larger runs, maxFanIn at a time.
+ */
+public class ExternalAggregator implements Closeable {
+    private static final int RUN_BUFFER_BYTES = 64 * 1024;
+    private static final int DEFAULT_MAX_FAN_IN = 64;
+
+    private final int maxKeysInMemory;
+    private final int maxFanIn;
+    private final Path spillDirectory;
+    private final LongKeyIndex index;
+    private long[] counts;                                  // the sums of the counts by slot number of the index
+    private long[] amounts;                                 // the sums of the amounts by slot number of the index
+    private final List<Path> runFiles = new ArrayList<>();
+
+    /**
+     * the receiver of the totals of the keys
+     */
+    @FunctionalInterface
+    public interface KeyTotalConsumer {
+        void accept(long key, long count, long amount) throws IOException;
+    }
+
+    /**
+     * @param maxKeysInMemory the maximum number of distinct keys that are accumulated in memory before a spill
+     * @param maxFanIn        the maximum number of runs that are merged at the same time, at least 2
+     * @param spillDirectory  the directory of the temporary run files
+     */
+    public ExternalAggregator(int maxKeysInMemory, int maxFanIn, Path spillDirectory) {
+        if (maxKeysInMemory <= 0) {
+            throw new IllegalArgumentException("The memory budget shall allow at least one key");
+        }
+        if (maxFanIn < 2) {
+            throw new IllegalArgumentException("A merge shall combine at least two runs");
+        }
+        this.maxKeysInMemory = maxKeysInMemory;
+        this.maxFanIn = maxFanIn;
+        this.spillDirectory = spillDirectory;
+        this.index = new LongKeyIndex(Math.min(maxKeysInMemory, 1 << 16));
+        this.counts = new long[Math.min(maxKeysInMemory, 1 << 16)];
+        this.amounts = new long[this.counts.length];
+    }
+
+    public ExternalAggregator(int maxKeysInMemory, Path spillDirectory) {
+        this(maxKeysInMemory, DEFAULT_MAX_FAN_IN, spillDirectory);
+    }
+
+    public ExternalAggregator(int maxKeysInMemory) {
+        this(maxKeysInMemory, Path.of(System.getProperty("java.io.tmpdir")));
+    }
+
+    public int getNumRuns() {
+        return runFiles.size();
+    }
+
+    /**
+     * adds a count and an amount to the sums of a key, and spills the sums in memory if the budget has been reached
+     *
+     * @param key
+     * @param count
+     * @param amount
+     * @throws IOException
+     */
+    public void add(long key, long count, long amount) throws IOException {
+        int slot = this.index.addOrGetSlot(key);
+        if (slot == this.counts.length) {
+            this.counts = Arrays.copyOf(this.counts, this.counts.length * 2);
+            this.amounts = Arrays.copyOf(this.amounts, this.amounts.length * 2);
+        }
+        this.counts[slot] += count;
+        this.amounts[slot] += amount;
+
+        if (this.index.size() >= this.maxKeysInMemory) {
+            this.spill();
+        }
+    }
+
+    /**
+     * merges the spilled runs and the sums in memory and reports the totals of every key once, in ascending key order.
+     * The aggregator is empty afterwards, and its run files have been deleted.
+     *
+     * @param consumer the receiver of the totals
+     * @throws IOException
+     */
+    public void mergeRuns(KeyTotalConsumer consumer) throws IOException {
+        try {
+            if (this.index.size() > 0) {
+                this.spill();
+            }
+
+            while (this.runFiles.size() > this.maxFanIn) {
+                // the merged run is appended, so every run is merged again only after all runs of its generation
+                List<Path> oldestRuns = new ArrayList<>(this.runFiles.subList(0, this.maxFanIn));
+                try (RunWriter writer = new RunWriter(this.createRunFile())) {
+                    mergeRunFiles(oldestRuns, writer::write);
+                }
+                this.runFiles.subList(0, this.maxFanIn).clear();
+                for (Path runFile : oldestRuns) {
+                    Files.delete(runFile);
+                }
+            }
+
+            mergeRunFiles(this.runFiles, consumer);
+        } finally {
+            this.close();
+        }
+    }
+
+    /**
+     * reports the totals of every key of the runs once, in ascending key order
+     */
+    private static void mergeRunFiles(List<Path> runFiles, KeyTotalConsumer consumer) throws IOException {
+        List<RunReader> readers = new ArrayList<>(runFiles.size());
+        PriorityQueue<RunReader> heads = new PriorityQueue<>((r1, r2) -> Long.compare(r1.key, r2.key));
+        try {
+            for (Path runFile : runFiles) {
+                RunReader reader = new RunReader(runFile);
+                readers.add(reader);
+                if (reader.next()) heads.add(reader);
+            }
+
+            while (!heads.isEmpty()) {
+                // every run holds a key at most once, so the equal keys of all runs are at the heads
+                RunReader head = heads.poll();
+                long key = head.key;
+                long count = head.count;
+                long amount = head.amount;
+                if (head.next()) heads.add(head);
+                while (!heads.isEmpty() && heads.peek().key == key) {
+                    RunReader equalHead = heads.poll();
+                    count += equalHead.count;
+                    amount += equalHead.amount;
+                    if (equalHead.next()) heads.add(equalHead);
+                }
+                consumer.accept(key, count, amount);
+            }
+        } finally {
+            for (RunReader reader : readers) reader.close();
+        }
+    }
+
+    /**
+     * discards all sums and deletes all run files
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        this.index.clear();
+        for (Path runFile : this.runFiles) {
+            Files.deleteIfExists(runFile);
+        }
+        this.runFiles.clear();
+    }
+
+    /**
+     * writes the sums in memory as a run of (key, count, amount) triples in ascending key order to a new temporary file
+     */
+    private void spill() throws IOException {
+        int numKeys = this.index.size();
+        long[] keys = new long[numKeys];
+        for (int slot = 0; slot < numKeys; slot++) keys[slot] = this.index.keyAt(slot);
+        Arrays.sort(keys);
+
+        try (RunWriter writer = new RunWriter(this.createRunFile())) {
+            for (long key : keys) {
+                int slot = this.index.slotOf(key);
+                writer.write(key, this.counts[slot], this.amounts[slot]);
+            }
+        }
+
+        this.index.clear();
+        Arrays.fill(this.counts, 0, numKeys, 0L);
+        Arrays.fill(this.amounts, 0, numKeys, 0L);
+    }
+
+    /**
+     * @return a new temporary run file, which is deleted when the aggregator is closed
+     */
+    private Path createRunFile() throws IOException {
+        Path runFile = Files.createTempFile(this.spillDirectory, "aggregate-run-", ".bin");
+        this.runFiles.add(runFile);
+        return runFile;
+    }
+
+    /**
+     * writes the (key, count, amount) triples of a run
+     */
+    private static class RunWriter implements Closeable {
+        private final DataOutputStream output;
+
+        RunWriter(Path runFile) throws IOException {
+            this.output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(runFile), RUN_BUFFER_BYTES));
+        }
+
+        void write(long key, long count, long amount) throws IOException {
+            this.output.writeLong(key);
+            this.output.writeLong(count);
+            this.output.writeLong(amount);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.output.close();
+        }
+    }
+
+    /**
+     * reads the (key, count, amount) triples of a run one at a time
+     */
+    private static class RunReader implements Closeable {
+        private final DataInputStream input;
+        long key;
+        long count;
+        long amount;
+
+        RunReader(Path runFile) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(runFile), RUN_BUFFER_BYTES));
+        }
+
+        /**
+         * @return whether a next triple has been read into key, count and amount
+         */
+        boolean next() throws IOException {
+            try {
+                this.key = this.input.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            this.count = this.input.readLong();
+            this.amount = this.input.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.input.close();
+        }
+    }
+}
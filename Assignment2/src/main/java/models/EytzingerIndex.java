@@ -0,0 +1,63 @@
+package models;
+
+/**
+ * an immutable search index of ascending long keys in Eytzinger (breadth first) layout:
+ * the children of the key at position k are at positions 2k and 2k+1, and position 0 is unused.
+ * The first levels of every search share the same few cache lines, and the descent needs no conditional branch.
+ * An index never changes after it has been built, so any number of threads can search it without locks.
+ */
+final class EytzingerIndex {
+    private final long[] keys;          // the keys by position
+    private final int[] indexes;        // the index in the sorted keys of the key at each position
+    private final int size;
+
+    /**
+     * @param sortedKeys the keys in ascending order
+     * @param size       the number of keys at the front of sortedKeys to be indexed
+     */
+    EytzingerIndex(long[] sortedKeys, int size) {
+        this.size = size;
+        this.keys = new long[size + 1];
+        this.indexes = new int[size + 1];
+        this.fill(sortedKeys, 0, 1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param key
+     * @return the index of the key in the sorted keys, or -1 if the key has not been indexed
+     */
+    int indexOf(long key) {
+        long[] keys = this.keys;
+        int n = this.size;
+        int position = 1;
+        while (position <= n) {
+            // descend to the right child if the key at this position is smaller, without a conditional branch
+            position = 2 * position + (keys[position] < key ? 1 : 0);
+        }
+        // undo the right turns after the last left turn, which was taken at the smallest key not smaller than key
+        position >>= Integer.numberOfTrailingZeros(~position) + 1;
+
+        return position != 0 && keys[position] == key ? this.indexes[position] : -1;
+    }
+
+    /**
+     * fills the subtree at a position by an in-order traversal, which visits the keys in sorted order
+     *
+     * @param index    the index of the next sorted key to be placed
+     * @param position the position of the root of the subtree
+     * @return the index of the next sorted key after the subtree
+     */
+    private int fill(long[] sortedKeys, int index, int position) {
+        if (position <= this.size) {
+            index = this.fill(sortedKeys, index, 2 * position);
+            this.keys[position] = sortedKeys[index];
+            this.indexes[position] = index;
+            index = this.fill(sortedKeys, index + 1, 2 * position + 1);
+        }
+        return index;
+    }
+}
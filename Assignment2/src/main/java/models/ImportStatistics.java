@@ -0,0 +1,278 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * the metrics of an import run of purchase files: the throughput of every file, the parse failures by reason,
+ * the unknown barcodes which have been rejected by the catalog filter,
+ * and a histogram of the time taken by the merges of the parsed purchases of a file into the accumulated purchases.
+ * Every file is also reported as a PurchaseFileImportEvent to Java Flight Recorder, when that event is enabled.
+ */
+public class ImportStatistics {
+    public static final int NUM_HISTOGRAM_BUCKETS = 64;
+
+    private final Map<String, FileStatistics> files = new LinkedHashMap<>();     // by file path
+    private final Map<Purchase.ParseFailure, Long> parseFailures = new EnumMap<>(Purchase.ParseFailure.class);
+    private final long[] mergeNanosHistogram = new long[NUM_HISTOGRAM_BUCKETS];
+    private long numBytes, numLines, numPurchases, numFilterRejects, elapsedNanos;
+
+    /**
+     * the metrics of the import of a single purchase file, which are collected by a single thread
+     */
+    public static class FileStatistics {
+        private final String filePath;
+        private final VaultLocation location;
+        private final long startNanos = System.nanoTime();
+        private final PurchaseFileImportEvent event = new PurchaseFileImportEvent();
+        private final long[] parseFailures = new long[Purchase.ParseFailure.values().length];
+        private final long[] mergeNanosHistogram = new long[NUM_HISTOGRAM_BUCKETS];
+        private long numBytes, numLines, numPurchases, numFilterRejects, elapsedNanos;
+
+        FileStatistics(String filePath, VaultLocation location) {
+            this.filePath = filePath;
+            this.location = location;
+            this.event.begin();
+        }
+
+        void countLine() {
+            this.numLines++;
+        }
+
+        void countBytes(long numBytes) {
+            this.numBytes += numBytes;
+        }
+
+        void countFailure(Purchase.ParseFailure failure) {
+            this.parseFailures[failure.ordinal()]++;
+        }
+
+        /**
+         * counts an unknown barcode that has been rejected by the catalog filter without a search of the catalog
+         */
+        void countFilterReject() {
+            this.numFilterRejects++;
+        }
+
+        void countMerge(long numMergedPurchases, long mergeNanos) {
+            this.numPurchases += numMergedPurchases;
+            this.mergeNanosHistogram[bucketOf(mergeNanos)]++;
+        }
+
+        /**
+         * completes the metrics of the file and reports them to Java Flight Recorder
+         */
+        void finish() {
+            this.elapsedNanos = System.nanoTime() - this.startNanos;
+            this.event.end();
+            if (this.event.shouldCommit()) {
+                this.event.filePath = this.filePath;
+                this.event.date = this.location.getDate();
+                this.event.city = this.location.getCity();
+                this.event.branch = this.location.getBranch();
+                this.event.bytes = this.numBytes;
+                this.event.lines = this.numLines;
+                this.event.purchases = this.numPurchases;
+                this.event.parseFailures = this.getNumParseFailures();
+                this.event.unknownBarcodes = this.getNumParseFailures(Purchase.ParseFailure.UNKNOWN_BARCODE);
+                this.event.filterRejects = this.numFilterRejects;
+                this.event.commit();
+            }
+        }
+
+        public String getFilePath() {
+            return filePath;
+        }
+
+        public VaultLocation getLocation() {
+            return location;
+        }
+
+        public long getNumBytes() {
+            return numBytes;
+        }
+
+        public long getNumLines() {
+            return numLines;
+        }
+
+        /**
+         * @return the number of purchases that have been parsed and merged successfully
+         */
+        public long getNumPurchases() {
+            return numPurchases;
+        }
+
+        /**
+         * @return the number of unknown barcodes that have been rejected by the catalog filter,
+         * which are counted as UNKNOWN_BARCODE parse failures too
+         */
+        public long getNumFilterRejects() {
+            return numFilterRejects;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getNumParseFailures(Purchase.ParseFailure failure) {
+            return parseFailures[failure.ordinal()];
+        }
+
+        public long getNumParseFailures() {
+            long numFailures = 0;
+            for (long count : parseFailures) numFailures += count;
+            return numFailures;
+        }
+
+        public double getBytesPerSecond() {
+            return perSecond(numBytes, elapsedNanos);
+        }
+
+        public double getLinesPerSecond() {
+            return perSecond(numLines, elapsedNanos);
+        }
+
+        /**
+         * @return new metrics of the file with the sums of the metrics of two finished imports of the file
+         */
+        private static FileStatistics combine(FileStatistics earlier, FileStatistics later) {
+            FileStatistics combined = new FileStatistics(earlier.filePath, earlier.location);
+            for (FileStatistics file : List.of(earlier, later)) {
+                combined.numBytes += file.numBytes;
+                combined.numLines += file.numLines;
+                combined.numPurchases += file.numPurchases;
+                combined.numFilterRejects += file.numFilterRejects;
+                combined.elapsedNanos += file.elapsedNanos;
+                for (int failure = 0; failure < combined.parseFailures.length; failure++) {
+                    combined.parseFailures[failure] += file.parseFailures[failure];
+                }
+                for (int bucket = 0; bucket < NUM_HISTOGRAM_BUCKETS; bucket++) {
+                    combined.mergeNanosHistogram[bucket] += file.mergeNanosHistogram[bucket];
+                }
+            }
+            return combined;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d lines, %d bytes in %.3f ms, %.0f lines/s, %d parse failures",
+                    filePath, numLines, numBytes, elapsedNanos / 1e6, getLinesPerSecond(), getNumParseFailures());
+        }
+    }
+
+    /**
+     * adds the metrics of a finished file to the totals of the import run
+     * Files may be added concurrently by the threads that import them.
+     * The metrics of a file that has been added before, e.g. by every merge of a vault watcher,
+     * are combined with the earlier metrics of that file into a single entry.
+     *
+     * @param file
+     */
+    synchronized void add(FileStatistics file) {
+        this.files.merge(file.filePath, file, FileStatistics::combine);
+        this.numBytes += file.numBytes;
+        this.numLines += file.numLines;
+        this.numPurchases += file.numPurchases;
+        this.numFilterRejects += file.numFilterRejects;
+        this.elapsedNanos += file.elapsedNanos;
+        for (Purchase.ParseFailure failure : Purchase.ParseFailure.values()) {
+            this.parseFailures.merge(failure, file.parseFailures[failure.ordinal()], Long::sum);
+        }
+        for (int bucket = 0; bucket < NUM_HISTOGRAM_BUCKETS; bucket++) {
+            this.mergeNanosHistogram[bucket] += file.mergeNanosHistogram[bucket];
+        }
+    }
+
+    public synchronized List<FileStatistics> getFiles() {
+        return Collections.unmodifiableList(new ArrayList<>(files.values()));
+    }
+
+    /**
+     * @param n
+     * @return the n files with the lowest throughput in lines per second
+     */
+    public List<FileStatistics> getSlowestFiles(int n) {
+        return PurchaseTracker.selectTops(this.getFiles(), n,
+                (file1, file2) -> Double.compare(file1.getLinesPerSecond(), file2.getLinesPerSecond()));
+    }
+
+    public synchronized long getNumBytes() {
+        return numBytes;
+    }
+
+    public synchronized long getNumLines() {
+        return numLines;
+    }
+
+    public synchronized long getNumPurchases() {
+        return numPurchases;
+    }
+
+    public synchronized long getNumParseFailures(Purchase.ParseFailure failure) {
+        return parseFailures.getOrDefault(failure, 0L);
+    }
+
+    public long getNumUnknownBarcodes() {
+        return getNumParseFailures(Purchase.ParseFailure.UNKNOWN_BARCODE);
+    }
+
+    /**
+     * @return the number of unknown barcodes that have been rejected by the catalog filter without a catalog search
+     */
+    public synchronized long getNumFilterRejects() {
+        return numFilterRejects;
+    }
+
+    /**
+     * @return the cumulative time that has been spent on the import of all files, across all threads
+     */
+    public synchronized long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * the histogram of merge times has logarithmic buckets:
+     * bucket b counts the merges of files that took between 2^(b-1) and 2^b - 1 nanoseconds, and bucket 0 the merges of 0 ns
+     *
+     * @return a copy of the counts per bucket
+     */
+    public synchronized long[] getMergeNanosHistogram() {
+        return mergeNanosHistogram.clone();
+    }
+
+    /**
+     * @param fraction e.g. 0.99 for the 99th percentile
+     * @return the upper bound in nanoseconds of the histogram bucket which holds the given percentile of all merges
+     */
+    public synchronized long getMergeNanosPercentile(double fraction) {
+        long total = 0;
+        for (long count : mergeNanosHistogram) total += count;
+        long threshold = (long) Math.ceil(fraction * total);
+        long cumulative = 0;
+        for (int bucket = 0; bucket < NUM_HISTOGRAM_BUCKETS; bucket++) {
+            cumulative += mergeNanosHistogram[bucket];
+            if (cumulative >= threshold && cumulative > 0) return bucket == 0 ? 0 : (1L << bucket) - 1;
+        }
+        return 0;
+    }
+
+    static int bucketOf(long nanos) {
+        return nanos <= 0 ? 0 : Math.min(NUM_HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    private static double perSecond(long amount, long nanos) {
+        return nanos <= 0 ? 0.0 : amount * 1e9 / nanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d files, %d lines, %d bytes, %d purchases, %s, %d filter rejects, merge p50 <= %d ns, p99 <= %d ns",
+                files.size(), numLines, numBytes, numPurchases, parseFailures, numFilterRejects,
+                getMergeNanosPercentile(0.5), getMergeNanosPercentile(0.99));
+    }
+}
@@ -0,0 +1,84 @@
+package models;
+
+import java.util.Arrays;
+
+/**
+ * an open addressing hash index which assigns consecutive slot numbers 0, 1, 2, ... to distinct long keys
+ * without boxing the keys. Clients keep their values in primitive arrays which are indexed by the slot numbers.
+ */
+class LongKeyIndex {
+    private static final int EMPTY = -1;
+
+    private long[] keys;        // the keys by slot number
+    private int[] table;        // the slot numbers by hash position, or EMPTY
+    private int size;
+
+    LongKeyIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        this.keys = new long[Math.max(16, expectedSize)];
+        this.table = new int[capacity];
+        Arrays.fill(this.table, EMPTY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * @param key
+     * @return the slot number of the key, or -1 if the key has not been added
+     */
+    int slotOf(long key) {
+        int mask = table.length - 1;
+        for (int position = hash(key) & mask; ; position = (position + 1) & mask) {
+            int slot = table[position];
+            if (slot == EMPTY || keys[slot] == key) return slot;
+        }
+    }
+
+    /**
+     * @param key
+     * @return the slot number of the key, which is the next free slot number if the key has not been added before
+     */
+    int addOrGetSlot(long key) {
+        int mask = table.length - 1;
+        int position = hash(key) & mask;
+        while (table[position] != EMPTY) {
+            if (keys[table[position]] == key) return table[position];
+            position = (position + 1) & mask;
+        }
+
+        if (size == keys.length) keys = Arrays.copyOf(keys, size * 2);
+        keys[size] = key;
+        table[position] = size;
+        if (++size * 2 > table.length) rehash(table.length * 2);
+        return size - 1;
+    }
+
+    void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        int mask = capacity - 1;
+        for (int slot = 0; slot < size; slot++) {
+            int position = hash(keys[slot]) & mask;
+            while (table[position] != EMPTY) position = (position + 1) & mask;
+            table[position] = slot;
+        }
+    }
+
+    static int hash(long key) {
+        // the finalizer of the splitmix64 generator spreads structured keys such as barcodes across all bits
+        key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+        return (int) (key ^ (key >>> 31));
+    }
+}
@@ -0,0 +1,101 @@
+package models;
+
+/**
+ * fixed-point arithmetic of money amounts, which are represented by a long number of cents.
+ * Sums of cents are exact, and formatting appends the digits of an amount without creating any formatter instances.
+ */
+public final class Money {
+    public static final int CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /**
+     * converts an amount such as a price into cents, rounding to the nearest cent
+     *
+     * @param amount
+     * @return the number of cents
+     */
+    public static long toCents(double amount) {
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    public static double fromCents(long cents) {
+        return (double) cents / CENTS_PER_UNIT;
+    }
+
+    /**
+     * parses a decimal amount such as 4.25 into cents, without any intermediate floating point value
+     * Decimals beyond the cents are rounded half up.
+     *
+     * @param text
+     * @return the number of cents
+     * @throws NumberFormatException if the text is not a decimal number
+     */
+    public static long parseCents(CharSequence text) {
+        int index = 0;
+        int end = text.length();
+        while (index < end && Character.isWhitespace(text.charAt(index))) index++;
+        while (end > index && Character.isWhitespace(text.charAt(end - 1))) end--;
+
+        boolean negative = index < end && text.charAt(index) == '-';
+        if (negative || (index < end && text.charAt(index) == '+')) index++;
+
+        long units = 0;
+        int numDigits = 0;
+        while (index < end && Character.isDigit(text.charAt(index))) {
+            units = Math.addExact(Math.multiplyExact(units, 10), text.charAt(index++) - '0');
+            numDigits++;
+        }
+
+        long cents = 0;
+        if (index < end && text.charAt(index) == '.') {
+            index++;
+            int numDecimals = 0;
+            while (index < end && Character.isDigit(text.charAt(index))) {
+                int digit = text.charAt(index++) - '0';
+                if (numDecimals < 2) cents = cents * 10 + digit;
+                else if (numDecimals == 2 && digit >= 5) cents++;
+                numDecimals++;
+                numDigits++;
+            }
+            for (; numDecimals < 2; numDecimals++) cents *= 10;
+        }
+
+        if (index != end || numDigits == 0) {
+            throw new NumberFormatException("Not a money amount: \"" + text + "\"");
+        }
+        cents = Math.addExact(Math.multiplyExact(units, CENTS_PER_UNIT), cents);
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * appends an amount of cents as a decimal number with two decimals, e.g. 1230 as 12.30
+     *
+     * @param target the builder to which the digits are appended
+     * @param cents
+     * @return the target builder
+     */
+    public static StringBuilder appendCents(StringBuilder target, long cents) {
+        if (cents < 0) {
+            target.append('-');
+            if (cents == Long.MIN_VALUE) {
+                // the magnitude cannot be negated, so split off the last digit
+                return target.append(-(cents / 10) / 10).append('.')
+                        .append(-(cents / 10) % 10).append(-(cents % 10));
+            }
+            cents = -cents;
+        }
+        long remainder = cents % CENTS_PER_UNIT;
+        return target.append(cents / CENTS_PER_UNIT).append('.')
+                .append((char) ('0' + remainder / 10)).append((char) ('0' + remainder % 10));
+    }
+
+    /**
+     * @param cents
+     * @return the amount of cents as a decimal number with two decimals, e.g. 1230 as "12.30"
+     */
+    public static String format(long cents) {
+        return appendCents(new StringBuilder(24), cents).toString();
+    }
+}
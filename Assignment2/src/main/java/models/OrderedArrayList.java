@@ -1,8 +1,19 @@
 package models;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.function.BinaryOperator;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.function.UnaryOperator;
 
 public class OrderedArrayList<E>
         extends ArrayList<E>
@@ -16,6 +27,27 @@ public class OrderedArrayList<E>
     //      other items at index position nSorted <= index < size() can be in any order amongst themselves
     //              and also relative to the sorted section
 
+    // the registered aggregates, which are maintained by every change of the list.
+    // Their mappers are not serializable, so a deserialized list starts without aggregates and search key
+    private transient Map<String, Aggregate<E>> aggregates = new LinkedHashMap<>();
+    private transient long[] aggregateScratch = new long[0];   // the values of a merged item before the merge
+    private long version;                               // counts the changes of the items of the list
+
+    // the optional read-optimized search index of the sorted section, which holds the primitive search keys
+    // of the sorted items in Eytzinger layout. Changes of the sorted section discard the index and sorts rebuild it.
+    // A search without index builds a new one and publishes it whole, so concurrent readers never see it half filled
+    private transient ToLongFunction<? super E> searchKey;
+    private transient volatile EytzingerIndex searchIndex;  // null if the index has to be rebuilt
+
+    private static class Aggregate<E> {
+        final ToLongFunction<? super E> mapper;
+        long value;
+
+        Aggregate(ToLongFunction<? super E> mapper) {
+            this.mapper = mapper;
+        }
+    }
+
     public OrderedArrayList() {
         this(null);
     }
@@ -26,6 +58,12 @@ public class OrderedArrayList<E>
         this.nSorted = 0;
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.aggregates = new LinkedHashMap<>();
+        this.aggregateScratch = new long[0];
+    }
+
     public Comparator<? super E> getOrdening() {
         return this.ordening;
     }
@@ -33,7 +71,12 @@ public class OrderedArrayList<E>
     @Override
     public void clear() {
         super.clear();
+        this.version++;
         this.nSorted = 0;
+        this.searchIndex = null;
+        for (Aggregate<E> aggregate : this.aggregates.values()) {
+            aggregate.value = 0;
+        }
     }
 
     @Override
@@ -41,35 +84,281 @@ public class OrderedArrayList<E>
         super.sort(c);
         this.ordening = c;
         this.nSorted = this.size();
+        this.rebuildSearchIndex();
+    }
+
+    @Override
+    public boolean add(E item) {
+        super.add(item);
+        this.updateAggregates(item, 1);
+        return true;
     }
 
     @Override
     public void add(int index, E item) {
-        if (index >= 0 && index < nSorted) nSorted = index - 1;
+        if (index >= 0 && index < nSorted) {
+            nSorted = index;
+            searchIndex = null;
+        }
         super.add(index, item);
+        this.updateAggregates(item, 1);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> items) {
+        for (E item : items) {
+            this.updateAggregates(item, 1);
+        }
+        return super.addAll(items);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends E> items) {
+        if (index >= 0 && index < nSorted) {
+            nSorted = index;
+            searchIndex = null;
+        }
+        for (E item : items) {
+            this.updateAggregates(item, 1);
+        }
+        return super.addAll(index, items);
+    }
+
+    @Override
+    public E set(int index, E item) {
+        if (index < nSorted) searchIndex = null;
+        E replacedItem = super.set(index, item);
+        this.updateAggregates(replacedItem, -1);
+        this.updateAggregates(item, 1);
+        return replacedItem;
     }
 
     @Override
     public E remove(int index) {
         // decrement nSorted to remove index
-        if (index < nSorted && nSorted != 0) nSorted--;
-        return super.remove(index);
+        if (index < nSorted && nSorted != 0) {
+            nSorted--;
+            searchIndex = null;
+        }
+        E removedItem = super.remove(index);
+        this.updateAggregates(removedItem, -1);
+        return removedItem;
     }
 
     @Override
     public boolean remove(Object object) {
-        int index = indexOf(object);
-        if (index < nSorted) {
-            nSorted--;
+        // remove the same item as ArrayList would remove, which is the first item that equals the object
+        int index = super.indexOf(object);
+        if (index < 0) {
+            return false;
+        }
+        this.remove(index);
+        return true;
+    }
+
+    // the bulk removals keep the order of the remaining items, so the remaining items of the sorted section
+    // still form the sorted section
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        return this.removeWhere(filter);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> items) {
+        Objects.requireNonNull(items);
+        return this.removeWhere(items::contains);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> items) {
+        Objects.requireNonNull(items);
+        return this.removeWhere(item -> !items.contains(item));
+    }
+
+    /**
+     * removes all items that match the filter, which is tested on every item before any item is removed,
+     * and shrinks the sorted section to the remaining items of the sorted section
+     *
+     * @param filter
+     * @return whether any item has been removed
+     */
+    private boolean removeWhere(Predicate<? super E> filter) {
+        int size = this.size();
+        boolean[] removed = new boolean[size];
+        int numRemoved = 0;
+        for (int index = 0; index < size; index++) {
+            if (filter.test(this.get(index))) {
+                removed[index] = true;
+                numRemoved++;
+            }
+        }
+        if (numRemoved == 0) return false;
+
+        int target = 0;
+        int numSortedRemaining = 0;
+        for (int index = 0; index < size; index++) {
+            E item = this.get(index);
+            if (removed[index]) {
+                this.updateAggregates(item, -1);
+                continue;
+            }
+            if (index < this.nSorted) numSortedRemaining++;
+            super.set(target++, item);
+        }
+        super.removeRange(target, size);
+        this.nSorted = numSortedRemaining;
+        this.searchIndex = null;
+        return true;
+    }
+
+    /**
+     * removes the items from fromIndex up to toIndex, e.g. by subList(fromIndex, toIndex).clear()
+     */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > this.size() || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("Range " + fromIndex + " - " + toIndex + " of size " + this.size());
+        }
+        for (int index = fromIndex; index < toIndex; index++) {
+            this.updateAggregates(this.get(index), -1);
+        }
+        if (fromIndex < this.nSorted) {
+            this.nSorted -= Math.min(this.nSorted, toIndex) - fromIndex;
+            this.searchIndex = null;
+        }
+        super.removeRange(fromIndex, toIndex);
+        this.version++;
+    }
+
+    // a replacement of all items cannot track the sorted section and the aggregates per item,
+    // so it conservatively discards the sorted section and recalculates the aggregates afterwards
+
+    @Override
+    public void replaceAll(UnaryOperator<E> operator) {
+        super.replaceAll(operator);
+        this.resetAfterBulkChange();
+    }
+
+    private void resetAfterBulkChange() {
+        this.version++;
+        this.nSorted = 0;
+        this.searchIndex = null;
+        for (Aggregate<E> aggregate : this.aggregates.values()) {
+            aggregate.value = 0;
+        }
+        for (E item : this) {
+            this.updateAggregates(item, 1);
+        }
+    }
+
+    @Override
+    public long getVersion() {
+        return this.version;
+    }
+
+    @Override
+    public void registerAggregate(String name, ToLongFunction<? super E> mapper) {
+        Aggregate<E> aggregate = new Aggregate<>(mapper);
+        for (E item : this) {
+            if (item != null) aggregate.value += mapper.applyAsLong(item);
+        }
+        this.aggregates.put(name, aggregate);
+        this.aggregateScratch = new long[this.aggregates.size()];
+    }
+
+    @Override
+    public long getAggregate(String name) {
+        Aggregate<E> aggregate = this.aggregates.get(name);
+        if (aggregate == null) {
+            throw new IllegalArgumentException("No aggregate has been registered with name " + name);
+        }
+        return aggregate.value;
+    }
+
+    /**
+     * adds or subtracts the mapper values of an item to or from all registered aggregates
+     *
+     * @param item
+     * @param sign +1 to add the values of the item, -1 to subtract them
+     */
+    private void updateAggregates(E item, int sign) {
+        // every addition, removal or replacement of an item passes here, so this is where the list changes version
+        this.version++;
+        if (item == null) return;
+        for (Aggregate<E> aggregate : this.aggregates.values()) {
+            aggregate.value += sign * aggregate.mapper.applyAsLong(item);
         }
-        return super.remove(object);
     }
 
+    /**
+     * sorts the list by this.ordening, such that the sorted section extends across all items
+     * Only the unsorted section is sorted separately, which is then merged with the sorted section in a single pass
+     * from the back of the list. Runs of items in the sorted section that precede the next item of the unsorted section
+     * are found by galloping, so sorting k new items after n sorted items takes O(k log k + n) time.
+     */
     @Override
     public void sort() {
-        if (this.nSorted < this.size()) {
+        int numUnsorted = this.size() - this.nSorted;
+        if (numUnsorted <= 0) {
+            return;
+        }
+        if (this.nSorted == 0 || this.ordening == null) {
             this.sort(this.ordening);
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        E[] unsorted = (E[]) this.subList(this.nSorted, this.size()).toArray();
+        Arrays.sort(unsorted, this.ordening);
+
+        // merge from the back, moving the sorted items that are larger than the next unsorted item up into place
+        int sortedIndex = this.nSorted - 1;
+        int target = this.size() - 1;
+        for (int unsortedIndex = numUnsorted - 1; unsortedIndex >= 0; unsortedIndex--) {
+            E item = unsorted[unsortedIndex];
+            if (sortedIndex >= 0 && this.ordening.compare(this.get(sortedIndex), item) > 0) {
+                int runStart = this.gallopToFirstLarger(item, sortedIndex);
+                for (; sortedIndex >= runStart; sortedIndex--) {
+                    super.set(target--, this.get(sortedIndex));
+                }
+            }
+            super.set(target--, item);
         }
+
+        this.nSorted = this.size();
+        this.rebuildSearchIndex();
+    }
+
+    /**
+     * finds the start of the run of items in the sorted section up to lastIndex that are larger than the given item,
+     * by exponential probes downwards from lastIndex followed by a binary search in the last probed interval
+     *
+     * @param item
+     * @param lastIndex the index of a sorted item that is larger than item
+     * @return the lowest index such that all items from that index up to lastIndex are larger than item
+     */
+    private int gallopToFirstLarger(E item, int lastIndex) {
+        int larger = lastIndex;     // the lowest index known to hold a larger item
+        int step = 1;
+        int notLarger = lastIndex - step;
+        while (notLarger >= 0 && this.ordening.compare(this.get(notLarger), item) > 0) {
+            larger = notLarger;
+            step <<= 1;
+            notLarger = lastIndex - step;
+        }
+
+        int low = Math.max(notLarger, -1) + 1;
+        int high = larger;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.ordening.compare(this.get(middle), item) > 0) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
     }
 
     @Override
@@ -99,6 +388,35 @@ public class OrderedArrayList<E>
         return -1;
     }
 
+    /**
+     * @return the number of items at the front of the list that are ordered by this.ordening
+     */
+    public int getNumSorted() {
+        return this.nSorted;
+    }
+
+    /**
+     * finds the first item of the sorted section that is not ordered before the searchItem, by a binary search,
+     * e.g. to seek to the lower bound of a range of items
+     *
+     * @param searchItem
+     * @return the lowest index in the sorted section of an item that is not smaller than searchItem,
+     * or the size of the sorted section if all sorted items are smaller
+     */
+    public int indexOfFirstNotSmaller(E searchItem) {
+        int low = 0;
+        int high = this.nSorted;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.ordening.compare(this.get(middle), searchItem) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
     /**
      * finds the position of the searchItem by an iterative binary search algorithm in the
      * sorted section of the arrayList, using the this.ordening comparator for comparison and equality test.
@@ -110,8 +428,14 @@ public class OrderedArrayList<E>
      * @return the position index of the found item in the arrayList, or -1 if no item matches the search item.
      */
     public int indexOfByIterativeBinarySearch(E searchItem) {
+        if (this.searchKey != null) {
+            int index = this.indexOfBySearchKey(this.searchKey.applyAsLong(searchItem));
+            if (index >= 0) return index;
+            return linearSearch(nSorted, this.size(), searchItem);
+        }
+
         int min = 0;
-        int max = nSorted;
+        int max = nSorted - 1;
 
         while (min <= max) {
             int middle = (min + max) / 2;
@@ -133,6 +457,55 @@ public class OrderedArrayList<E>
         return linearSearch(min, max, searchItem);
     }
 
+    /**
+     * enables the read-optimized search index of the sorted section, which is used by indexOfByIterativeBinarySearch
+     * The search index holds the primitive keys of the sorted items in Eytzinger (breadth first) layout,
+     * so the first levels of every search share the same few cache lines and no comparator calls are needed.
+     * The index is rebuilt by every sort, and by the first search after any other change of the sorted section.
+     *
+     * @param searchKey a function that maps every item onto a key, such that comparing the keys of two items
+     *                  yields the same order as this.ordening, e.g. Product::getBarcode; or null to disable the index
+     */
+    public void setSearchKey(ToLongFunction<? super E> searchKey) {
+        this.searchKey = searchKey;
+        this.rebuildSearchIndex();
+    }
+
+    /**
+     * finds an item in the sorted section by its search key, using the search index
+     *
+     * @param key the search key of the item
+     * @return the position index of the found item in the arrayList,
+     * or -1 if no item in the sorted section matches the key or no search key has been set
+     */
+    public int indexOfBySearchKey(long key) {
+        if (this.searchKey == null) return -1;
+        EytzingerIndex index = this.searchIndex;
+        if (index == null) index = this.rebuildSearchIndex();
+        return index.indexOf(key);
+    }
+
+    /**
+     * builds the search index of the current sorted section and publishes it, if a search key has been set.
+     * Readers that race to rebuild the index build equal indexes, of which the last one is kept.
+     *
+     * @return the new search index, or null if no search key has been set
+     */
+    private EytzingerIndex rebuildSearchIndex() {
+        ToLongFunction<? super E> searchKey = this.searchKey;
+        if (searchKey == null) {
+            this.searchIndex = null;
+            return null;
+        }
+        long[] sortedKeys = new long[this.nSorted];
+        for (int index = 0; index < sortedKeys.length; index++) {
+            sortedKeys[index] = searchKey.applyAsLong(this.get(index));
+        }
+        EytzingerIndex index = new EytzingerIndex(sortedKeys, sortedKeys.length);
+        this.searchIndex = index;
+        return index;
+    }
+
     /**
      * finds the position of the searchItem by a recursive binary search algorithm in the
      * sorted section of the arrayList, using the this.ordening comparator for comparison and equality test.
@@ -192,10 +565,82 @@ public class OrderedArrayList<E>
             this.add(newItem);
             return true;
         } else {
-            E matchedItem = get(matchedItemIndex);
-            E mergedItem = merger.apply(matchedItem, newItem);
-            this.set(matchedItemIndex, mergedItem);
+            this.mergeAt(matchedItemIndex, newItem, merger);
             return false;
         }
     }
+
+    /**
+     * merges a batch of new items into the list by a sort-merge join, instead of a binary search per item.
+     * The list is sorted first, the batch is sorted by this.ordening and items with equal keys are merged
+     * amongst each other, and then the batch is joined with the sorted list in a single linear pass.
+     * Matched items are merged in place, and all other new items are merged into the sorted section.
+     * For m new items and n items in the list this takes O(m log m + n) time.
+     *
+     * @param newItems the new items, null items are skipped
+     * @param merger   a function that takes two items and returns an item that contains the merged content of
+     *                 the two items according to some merging rule.
+     * @return the number of new items that were added to the list
+     */
+    @Override
+    public int mergeAll(Collection<E> newItems, BinaryOperator<E> merger) {
+        if (this.ordening == null) {
+            return OrderedList.super.mergeAll(newItems, merger);
+        }
+        this.sort();
+
+        List<E> batch = new ArrayList<>(newItems.size());
+        for (E newItem : newItems) {
+            if (newItem != null) batch.add(newItem);
+        }
+        batch.sort(this.ordening);
+
+        int numSorted = this.size();
+        int index = 0;
+        int numAdded = 0;
+        for (int batchIndex = 0; batchIndex < batch.size(); batchIndex++) {
+            E newItem = batch.get(batchIndex);
+            // combine the next items of the batch with the same key, before they are joined with the list
+            while (batchIndex + 1 < batch.size() && this.ordening.compare(newItem, batch.get(batchIndex + 1)) == 0) {
+                newItem = merger.apply(newItem, batch.get(++batchIndex));
+            }
+
+            while (index < numSorted && this.ordening.compare(this.get(index), newItem) < 0) {
+                index++;
+            }
+            if (index < numSorted && this.ordening.compare(this.get(index), newItem) == 0) {
+                this.mergeAt(index, newItem, merger);
+            } else {
+                this.add(newItem);
+                numAdded++;
+            }
+        }
+
+        // the added items have been appended in order, so the merge of the unsorted section takes linear time
+        this.sort();
+        return numAdded;
+    }
+
+    /**
+     * replaces the item at index by the outcome of the merge between that item and the newItem,
+     * and updates the aggregates by the change of the merged item
+     */
+    private void mergeAt(int index, E newItem, BinaryOperator<E> merger) {
+        E matchedItem = get(index);
+
+        // the merger may change the matched item in place, so capture its aggregate values beforehand
+        int aggregateIndex = 0;
+        for (Aggregate<E> aggregate : this.aggregates.values()) {
+            this.aggregateScratch[aggregateIndex++] = aggregate.mapper.applyAsLong(matchedItem);
+        }
+
+        E mergedItem = merger.apply(matchedItem, newItem);
+        super.set(index, mergedItem);
+        this.version++;
+
+        aggregateIndex = 0;
+        for (Aggregate<E> aggregate : this.aggregates.values()) {
+            aggregate.value += aggregate.mapper.applyAsLong(mergedItem) - this.aggregateScratch[aggregateIndex++];
+        }
+    }
 }
@@ -1,24 +1,76 @@
 package models;
 
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.function.BinaryOperator;
 import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.StreamSupport;
 
 public interface OrderedList<E> extends List<E> {
+    // the minimum size of a list for which an ad hoc aggregate is calculated in parallel
+    int PARALLEL_AGGREGATE_THRESHOLD = 16 * 1024;
+
     void sort();
 
     int indexOfByBinarySearch(E searchItem);
 
     boolean merge(E item, BinaryOperator<E> merger);
 
+    /**
+     * merges every item of a batch of new items into the list, like merge does for a single item
+     *
+     * @param newItems the new items, null items are skipped
+     * @param merger   a function that takes two items and returns an item that contains the merged content of
+     *                 the two items according to some merging rule.
+     * @return the number of new items that were added to the list
+     */
+    default int mergeAll(Collection<E> newItems, BinaryOperator<E> merger) {
+        int numAdded = 0;
+        for (E newItem : newItems) {
+            if (this.merge(newItem, merger)) numAdded++;
+        }
+        return numAdded;
+    }
+
     Comparator<? super E> getOrdening();
 
+    /**
+     * @return a counter which changes whenever items are added, removed, replaced or merged,
+     * such that results which have been derived from the list can be validated against the current content.
+     * Changes of items that happen outside of the list are not noticed, like they are not noticed by the aggregates.
+     */
+    long getVersion();
+
+    /**
+     * registers a named aggregate, which sums the mapper values of all (non-null) items of the list
+     * The list maintains the sum incrementally while items are added, merged, replaced or removed,
+     * so the aggregate can be retrieved without a scan of the list.
+     * Items shall only be changed via merge or set while they are in the list, because the list cannot
+     * account for changes of the mapper values of its items that happen outside of the list.
+     *
+     * @param name   the name of the aggregate
+     * @param mapper the function that maps an item onto the value to be summed
+     */
+    void registerAggregate(String name, ToLongFunction<? super E> mapper);
+
+    /**
+     * @param name the name of a registered aggregate
+     * @return the current sum of the aggregate across all items of the list
+     */
+    long getAggregate(String name);
+
+    /**
+     * calculates the sum of the mapper values of all items by a single scan of the list.
+     * Large lists are split by their spliterator and summed in parallel, such that mappers must be thread-safe.
+     *
+     * @param mapper
+     * @return the sum
+     */
     default double aggregate(ToDoubleFunction<E> mapper) {
-        double sum = 0;
-        for (E item : this) {
-            sum += mapper.applyAsDouble(item);
-        }
-        return sum;
+        return StreamSupport.stream(this.spliterator(), this.size() >= PARALLEL_AGGREGATE_THRESHOLD)
+                .mapToDouble(mapper)
+                .sum();
     }
 }
@@ -1,9 +1,9 @@
 package models;
 
 public class Product {
-    private long barcode;
+    private final long barcode;
     private String title;
-    private double price;
+    private long priceCents;
 
     public Product(long barcode) {
         this.barcode = barcode;
@@ -12,7 +12,19 @@ public class Product {
     public Product(long barcode, String title, double price) {
         this(barcode);
         this.title = title;
-        this.price = price;
+        this.priceCents = Money.toCents(price);
+    }
+
+    /**
+     * @param barcode
+     * @param title
+     * @param priceCents the price in cents
+     * @return a new Product instance with the provided information
+     */
+    public static Product withPriceCents(long barcode, String title, long priceCents) {
+        Product product = new Product(barcode, title, 0.0);
+        product.priceCents = priceCents;
+        return product;
     }
 
     /**
@@ -27,7 +39,7 @@ public class Product {
         if (textLine != null) {
             String[] productText = textLine.split(",\s");
 
-            newProduct = new Product(Long.parseLong(productText[0]), productText[1], Double.parseDouble(productText[2]));
+            newProduct = withPriceCents(Long.parseLong(productText[0]), productText[1], Money.parseCents(productText[2]));
         }
         return newProduct;
     }
@@ -41,11 +53,19 @@ public class Product {
     }
 
     public double getPrice() {
-        return price;
+        return Money.fromCents(priceCents);
+    }
+
+    public long getPriceCents() {
+        return priceCents;
     }
 
     public void setPrice(double price) {
-        this.price = price;
+        this.priceCents = Money.toCents(price);
+    }
+
+    public void setPriceCents(long priceCents) {
+        this.priceCents = priceCents;
     }
 
     @Override
@@ -61,6 +81,6 @@ public class Product {
 
     @Override
     public String toString() {
-        return barcode + "/" + title + "/" + price;
+        return barcode + "/" + this.getTitle() + "/" + this.getPrice();
     }
 }
@@ -0,0 +1,215 @@
+package models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * an immutable version of the product catalog, which is searchable by barcode.
+ * A new catalog version is built completely before it is published, and a published version is never changed,
+ * so threads that have obtained a version can keep using it without any locks while a newer version is published.
+ * The catalog also holds a Bloom filter of its barcodes, which rejects most unknown barcodes without a search,
+ * and searches the barcodes that pass the filter in an Eytzinger layout of the barcode column.
+ * <p>
+ * The products are stored in a compact columnar form: primitive arrays of barcodes and prices which are sorted by
+ * barcode, and the titles in one arena of UTF-8 bytes, in which every distinct title is stored only once.
+ * Product instances are views of a catalog entry, which decode their title when it is asked for.
+ * A view is created on the first lookup of its entry and then shared by all later lookups, so parsing purchases
+ * does not allocate a product per line. Views are read-only, their setters throw UnsupportedOperationException.
+ */
+public class ProductCatalog {
+    public static final ProductCatalog EMPTY = new ProductCatalog(0, List.of());
+
+    private final long version;
+    private final long[] barcodes;          // sorted ascending
+    private final long[] priceCents;        // by index of the barcode
+    private final int[] titleOffsets;       // the offset of the title in the arena, by index of the barcode
+    private final int[] titleLengths;       // the number of title bytes, or -1 for a product without title
+    private final byte[] titleArena;
+    private final BloomFilter filter;
+    private final EytzingerIndex barcodeIndex;
+    // the views of the entries that have been looked up, by index of the barcode;
+    // racing threads may each create a view of the same entry, which are equal and equally valid
+    private final ProductView[] views;
+    private final List<Product> productsView = new AbstractList<>() {
+        @Override
+        public Product get(int index) {
+            return productAt(index);
+        }
+
+        @Override
+        public int size() {
+            return barcodes.length;
+        }
+    };
+
+    /**
+     * a read-only product of the catalog, which decodes its title from the arena of the catalog on first use
+     */
+    private class ProductView extends Product {
+        private final int index;
+        private String title;
+
+        ProductView(int index) {
+            super(barcodes[index]);
+            this.index = index;
+        }
+
+        @Override
+        public long getPriceCents() {
+            return priceCents[this.index];
+        }
+
+        @Override
+        public double getPrice() {
+            return Money.fromCents(priceCents[this.index]);
+        }
+
+        @Override
+        public void setPrice(double price) {
+            throw new UnsupportedOperationException("The products of a catalog version cannot be changed");
+        }
+
+        @Override
+        public void setPriceCents(long priceCents) {
+            throw new UnsupportedOperationException("The products of a catalog version cannot be changed");
+        }
+
+        @Override
+        public String getTitle() {
+            if (this.title == null && titleLengths[this.index] >= 0) {
+                this.title = new String(titleArena, titleOffsets[this.index], titleLengths[this.index],
+                        StandardCharsets.UTF_8);
+            }
+            return this.title;
+        }
+    }
+
+    /**
+     * builds a catalog version from a list of products
+     *
+     * @param version  the version number of the catalog
+     * @param products the products of the catalog, which are copied
+     */
+    public ProductCatalog(long version, List<Product> products) {
+        this.version = version;
+
+        Product[] sortedProducts = products.stream()
+                .filter(Objects::nonNull)
+                .sorted((product1, product2) -> Long.compare(product1.getBarcode(), product2.getBarcode()))
+                .toArray(Product[]::new);
+        int numProducts = sortedProducts.length;
+        this.barcodes = new long[numProducts];
+        this.priceCents = new long[numProducts];
+        this.titleOffsets = new int[numProducts];
+        this.titleLengths = new int[numProducts];
+
+        // collect the distinct titles into the arena, the first occurrence of a title is shared by all others
+        Map<String, Integer> arenaOffsets = new HashMap<>();
+        byte[] arena = new byte[Math.max(16, numProducts * 16)];
+        int arenaSize = 0;
+        for (int index = 0; index < numProducts; index++) {
+            Product product = sortedProducts[index];
+            this.barcodes[index] = product.getBarcode();
+            this.priceCents[index] = product.getPriceCents();
+
+            String title = product.getTitle();
+            if (title == null) {
+                this.titleLengths[index] = -1;
+                continue;
+            }
+            byte[] titleBytes = title.getBytes(StandardCharsets.UTF_8);
+            Integer offset = arenaOffsets.get(title);
+            if (offset == null) {
+                if (arenaSize + titleBytes.length > arena.length) {
+                    arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + titleBytes.length));
+                }
+                System.arraycopy(titleBytes, 0, arena, arenaSize, titleBytes.length);
+                offset = arenaSize;
+                arenaOffsets.put(title, offset);
+                arenaSize += titleBytes.length;
+            }
+            this.titleOffsets[index] = offset;
+            this.titleLengths[index] = titleBytes.length;
+        }
+        this.titleArena = Arrays.copyOf(arena, arenaSize);
+
+        this.barcodeIndex = new EytzingerIndex(this.barcodes, numProducts);
+        this.views = new ProductView[numProducts];
+        this.filter = new BloomFilter(numProducts);
+        for (long barcode : this.barcodes) {
+            this.filter.add(barcode);
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return barcodes.length;
+    }
+
+    /**
+     * @return the products ordered by barcode, as an unmodifiable list of views
+     */
+    public List<Product> getProducts() {
+        return productsView;
+    }
+
+    /**
+     * @return a copy of the barcodes of all products, ascending
+     */
+    public long[] getBarcodes() {
+        return barcodes.clone();
+    }
+
+    /**
+     * @return the number of bytes of the arena with all distinct titles
+     */
+    public int getTitleArenaSize() {
+        return titleArena.length;
+    }
+
+    /**
+     * @param barcode
+     * @return whether the barcode may be in the catalog, false if it is certainly not in the catalog
+     */
+    public boolean mightContain(long barcode) {
+        return this.filter.mightContain(barcode);
+    }
+
+    /**
+     * @param barcode
+     * @return the index of the barcode in the order of the catalog, or -1 if the catalog does not include that barcode
+     */
+    public int indexOf(long barcode) {
+        return this.barcodeIndex.indexOf(barcode);
+    }
+
+    /**
+     * @param barcode
+     * @return the view of the product with the barcode, or null if the catalog does not include that barcode
+     */
+    public Product findProduct(long barcode) {
+        int index = this.indexOf(barcode);
+        return index >= 0 ? this.productAt(index) : null;
+    }
+
+    /**
+     * @param index
+     * @return the view of the product at index in the order of the catalog
+     */
+    public Product productAt(int index) {
+        ProductView view = this.views[index];
+        if (view == null) {
+            view = new ProductView(index);
+            this.views[index] = view;
+        }
+        return view;
+    }
+}
@@ -1,17 +1,36 @@
 package models;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.util.List;
-import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
 
 public class Purchase {
+    /**
+     * the reasons why a text line cannot be parsed into a purchase
+     */
+    public enum ParseFailure {
+        MISSING_FIELDS,     // the line does not hold exactly a barcode and an amount
+        INVALID_NUMBER,     // the barcode or the amount is not a valid number
+        UNKNOWN_BARCODE     // the barcode is not in the list of products
+    }
+
     private final Product product;
-    private int count;
+    private long count;
+    private long revenueCents;      // accumulated at the prices of the catalog versions by which the purchases were parsed
+
+    public Purchase(Product product, long count) {
+        this(product, count, product.getPriceCents() * count);
+    }
 
-    public Purchase(Product product, int count) {
+    /**
+     * @param product
+     * @param count
+     * @param revenueCents the revenue of the count, which may have been accumulated at different prices of the product
+     */
+    Purchase(Product product, long count, long revenueCents) {
         this.product = product;
         this.count = count;
+        this.revenueCents = revenueCents;
     }
 
     /**
@@ -23,27 +42,43 @@ public class Purchase {
      *          or null if the textLine is corrupt or incomplete
      */
     public static Purchase fromLine(String textLine, List<Product> products) {
+        return fromLine(textLine, barcode -> findProduct(products, barcode), failure -> {});
+    }
+
+    /**
+     * parses purchase summary information from a textLine with format: barcode, amount
+     * and reports the reason if the textLine cannot be parsed
+     * @param textLine
+     * @param productLookup a function that finds the product of a barcode, or returns null for an unknown barcode
+     * @param onFailure     the consumer which is notified of the reason why the textLine cannot be parsed
+     * @return  a new Purchase instance with the provided information
+     *          or null if the textLine is corrupt or incomplete
+     */
+    public static Purchase fromLine(String textLine, LongFunction<Product> productLookup, Consumer<ParseFailure> onFailure) {
         Purchase newPurchase;
 
         String[] purchaseArray = textLine.split(", ");
         final int TOTAL_ITEMS_IN_ARRAY = 2;
 
         if (purchaseArray.length != TOTAL_ITEMS_IN_ARRAY) {
+            onFailure.accept(ParseFailure.MISSING_FIELDS);
             return null;
         }
 
-        String barcode = purchaseArray[0];
-        int soldItems = Integer.parseInt(purchaseArray[1]);
-
-        Product soldProduct = null;
-
-        for (Product product : products) {
-            if (Long.toString(product.getBarcode()).equals(barcode)) {
-                soldProduct = product;
-            }
+        long barcode;
+        int soldItems;
+        try {
+            barcode = Long.parseLong(purchaseArray[0]);
+            soldItems = Integer.parseInt(purchaseArray[1]);
+        } catch (NumberFormatException e) {
+            onFailure.accept(ParseFailure.INVALID_NUMBER);
+            return null;
         }
 
+        Product soldProduct = productLookup.apply(barcode);
+
         if (soldProduct == null) {
+            onFailure.accept(ParseFailure.UNKNOWN_BARCODE);
             return null;
         }
 
@@ -52,39 +87,90 @@ public class Purchase {
         return newPurchase;
     }
 
+    /**
+     * finds a product by its barcode, by a binary search of an ordered list of products
+     * or by a linear search of any other list of products
+     *
+     * @param products
+     * @param barcode
+     * @return the product with the barcode, or null if the products do not include that barcode
+     */
+    static Product findProduct(List<Product> products, long barcode) {
+        if (products instanceof OrderedList) {
+            int index;
+            if (products instanceof OrderedArrayList) {
+                // uses the search index of the catalog, if it has been enabled
+                index = ((OrderedArrayList<Product>) products).indexOfByIterativeBinarySearch(new Product(barcode));
+            } else {
+                index = ((OrderedList<Product>) products).indexOfByBinarySearch(new Product(barcode));
+            }
+            return index >= 0 ? products.get(index) : null;
+        }
+
+        for (Product product : products) {
+            if (product.getBarcode() == barcode) {
+                return product;
+            }
+        }
+        return null;
+    }
+
     /**
      * add a delta amount to the count of the purchase summary instance
      *
      * @param delta
      */
-    public void addCount(int delta) {
+    public void addCount(long delta) {
         this.count += delta;
+        this.revenueCents += this.product.getPriceCents() * delta;
+    }
+
+    /**
+     * adds the count and revenue of another purchase of the same product into this purchase summary instance.
+     * The other purchase may refer to another version of the product with another price,
+     * and its revenue remains attributed to that price.
+     *
+     * @param other
+     */
+    public void addPurchase(Purchase other) {
+        this.count += other.count;
+        this.revenueCents += other.revenueCents;
     }
 
     public long getBarcode() {
         return this.product.getBarcode();
     }
 
-    public int getCount() {
+    public long getCount() {
         return count;
     }
 
-    public void setCount(int count) {
+    public void setCount(long count) {
         this.count = count;
+        this.revenueCents = this.product.getPriceCents() * count;
     }
 
     public Product getProduct() {
         return product;
     }
 
+    /**
+     * @return the exact revenue of this purchase in cents, at the prices by which its purchases have been parsed
+     */
+    public long getRevenueCents() {
+        return this.revenueCents;
+    }
+
     public String calculateRevenue(Product product) {
-        DecimalFormat df = new DecimalFormat("#.00",
-                DecimalFormatSymbols.getInstance(Locale.US));
-        return df.format(product.getPrice() * this.getCount());
+        return Money.format(product.getPriceCents() * this.getCount());
     }
 
     @Override
     public String toString() {
-        return String.format("%d/%s/%d/%s", this.getBarcode(), this.getProduct().getTitle(), this.getCount(), this.calculateRevenue(this.getProduct()));
+        StringBuilder text = new StringBuilder(64)
+                .append(this.getBarcode()).append('/')
+                .append(this.getProduct().getTitle()).append('/')
+                .append(this.getCount()).append('/');
+        return Money.appendCents(text, this.getRevenueCents()).toString();
     }
 }
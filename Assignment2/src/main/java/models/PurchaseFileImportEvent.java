@@ -0,0 +1,49 @@
+package models;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * the Java Flight Recorder event of the import of one purchase file
+ */
+@Name("models.PurchaseFileImport")
+@Label("Purchase File Import")
+@Category({"Supermarket Statistics", "Import"})
+@Description("The import of the purchases of one branch file of the vault")
+class PurchaseFileImportEvent extends Event {
+    @Label("File Path")
+    String filePath;
+
+    @Label("Date")
+    String date;
+
+    @Label("City")
+    String city;
+
+    @Label("Branch")
+    String branch;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Lines")
+    long lines;
+
+    @Label("Purchases")
+    long purchases;
+
+    @Label("Parse Failures")
+    long parseFailures;
+
+    @Label("Unknown Barcodes")
+    long unknownBarcodes;
+
+    @Label("Filter Rejects")
+    @Description("Unknown barcodes rejected by the catalog Bloom filter without a catalog search")
+    long filterRejects;
+}
@@ -0,0 +1,248 @@
+package models;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a binary columnar snapshot of a product catalog and the aggregated purchases of those products.
+ * The snapshot file holds, after a small header, one primitive array per column:
+ * the barcodes and prices in cents of all products, the offsets of their titles in a dictionary of UTF-8 title bytes,
+ * and the catalog index, count and revenue in cents of all purchases.
+ * Loading maps the columns of the file into memory and copies them by bulk transfers, without any text parsing.
+ * The columns are then copied into Product and Purchase instances on purpose: the tracker merges into and queries
+ * ordered lists of those objects, so the mapping is only kept while the snapshot is loaded.
+ */
+public class PurchaseSnapshot {
+    private static final int MAGIC = 0x41445332;        // "ADS2"
+    private static final int FORMAT_VERSION = 4;
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+
+    private final List<Product> products;
+    private final List<Purchase> purchases;
+
+    private PurchaseSnapshot(List<Product> products, List<Purchase> purchases) {
+        this.products = products;
+        this.purchases = purchases;
+    }
+
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    public List<Purchase> getPurchases() {
+        return purchases;
+    }
+
+    /**
+     * saves the products and purchases into a snapshot file.
+     * The columns are streamed through a small buffer into a temporary file next to the snapshot file,
+     * which then replaces the snapshot file atomically, such that a failed save keeps the earlier snapshot intact.
+     *
+     * @param file
+     * @param catalog   the product catalog
+     * @param purchases the aggregated purchases, each of which refers to a product in the catalog
+     * @throws IOException
+     */
+    public static void save(Path file, ProductCatalog catalog, List<Purchase> purchases) throws IOException {
+        List<Product> products = catalog.getProducts();
+        int numProducts = products.size();
+        int numPurchases = purchases.size();
+
+        // collect the title dictionary first, because its size is part of the header
+        byte[][] titles = new byte[numProducts][];
+        long numTitleBytes = 0;
+        for (int index = 0; index < numProducts; index++) {
+            String title = products.get(index).getTitle();
+            titles[index] = title == null ? new byte[0] : title.getBytes(StandardCharsets.UTF_8);
+            numTitleBytes += titles[index].length;
+        }
+        if (numTitleBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The titles of " + numProducts + " products take " + numTitleBytes
+                    + " bytes, which exceeds the title dictionary of a snapshot");
+        }
+
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporaryFile = Files.createTempFile(directory, file.getFileName() + ".", ".tmp");
+        try {
+            try (ColumnWriter writer = new ColumnWriter(temporaryFile)) {
+                writer.putInt(MAGIC).putInt(FORMAT_VERSION)
+                        .putInt(numProducts).putInt(numPurchases).putInt((int) numTitleBytes);
+
+                for (Product product : products) writer.putLong(product.getBarcode());
+                for (Product product : products) writer.putLong(product.getPriceCents());
+                int titleOffset = 0;
+                for (byte[] title : titles) {
+                    writer.putInt(titleOffset);
+                    titleOffset += title.length;
+                }
+                writer.putInt(titleOffset);
+                for (byte[] title : titles) writer.put(title);
+
+                for (Purchase purchase : purchases) {
+                    int productIndex = catalog.indexOf(purchase.getBarcode());
+                    if (productIndex < 0) {
+                        throw new IllegalArgumentException("Purchase of unknown product " + purchase.getProduct());
+                    }
+                    writer.putInt(productIndex);
+                }
+                for (Purchase purchase : purchases) writer.putLong(purchase.getCount());
+                for (Purchase purchase : purchases) writer.putLong(purchase.getRevenueCents());
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * loads the products and purchases from a snapshot file.
+     * The counts in the header are validated against the size of the file before any column is allocated,
+     * and the title offsets and catalog indexes are validated before they are used.
+     *
+     * @param file
+     * @return the snapshot with new Product and Purchase instances, in the order in which they have been saved
+     * @throws IOException if the file cannot be read, or is not a complete snapshot of this format version
+     */
+    public static PurchaseSnapshot load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = map(channel, 0, Math.min(HEADER_BYTES, channel.size()));
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+                throw new IOException("Not a purchase snapshot file of version " + FORMAT_VERSION + ": " + file);
+            }
+            int numProducts = header.getInt();
+            int numPurchases = header.getInt();
+            int numTitleBytes = header.getInt();
+            if (numProducts < 0 || numPurchases < 0 || numTitleBytes < 0) {
+                throw new IOException("Corrupt header of snapshot file " + file + ": negative counts");
+            }
+            long expectedBytes = HEADER_BYTES
+                    + numProducts * (2L * Long.BYTES + Integer.BYTES) + Integer.BYTES + numTitleBytes
+                    + numPurchases * (Integer.BYTES + 2L * Long.BYTES);
+            if (expectedBytes != channel.size()) {
+                throw new IOException("Corrupt snapshot file " + file + ": its header requires " + expectedBytes
+                        + " bytes, but the file has " + channel.size() + " bytes");
+            }
+            return load(file, channel, numProducts, numPurchases, numTitleBytes);
+        }
+    }
+
+    /**
+     * copies the columns of a snapshot file with a valid header,
+     * mapping one column at a time, because all columns together may exceed the 2 GB limit of a mapping
+     */
+    private static PurchaseSnapshot load(Path file, FileChannel channel, int numProducts, int numPurchases,
+                                         int numTitleBytes) throws IOException {
+        long[] barcodes = new long[numProducts];
+        long[] prices = new long[numProducts];
+        int[] titleOffsets = new int[numProducts + 1];
+        byte[] titles = new byte[numTitleBytes];
+        int[] productIndexes = new int[numPurchases];
+        long[] counts = new long[numPurchases];
+        long[] revenues = new long[numPurchases];
+
+        long position = HEADER_BYTES;
+        map(channel, position, (long) numProducts * Long.BYTES).asLongBuffer().get(barcodes);
+        position += (long) numProducts * Long.BYTES;
+        map(channel, position, (long) numProducts * Long.BYTES).asLongBuffer().get(prices);
+        position += (long) numProducts * Long.BYTES;
+        map(channel, position, (numProducts + 1L) * Integer.BYTES).asIntBuffer().get(titleOffsets);
+        position += (numProducts + 1L) * Integer.BYTES;
+        map(channel, position, numTitleBytes).get(titles);
+        position += numTitleBytes;
+        map(channel, position, (long) numPurchases * Integer.BYTES).asIntBuffer().get(productIndexes);
+        position += (long) numPurchases * Integer.BYTES;
+        map(channel, position, (long) numPurchases * Long.BYTES).asLongBuffer().get(counts);
+        position += (long) numPurchases * Long.BYTES;
+        map(channel, position, (long) numPurchases * Long.BYTES).asLongBuffer().get(revenues);
+
+        if (titleOffsets[0] != 0 || titleOffsets[numProducts] != numTitleBytes) {
+            throw new IOException("Corrupt title dictionary in snapshot file " + file);
+        }
+        List<Product> products = new ArrayList<>(numProducts);
+        for (int index = 0; index < numProducts; index++) {
+            if (titleOffsets[index + 1] < titleOffsets[index]) {
+                throw new IOException("Corrupt title dictionary in snapshot file " + file);
+            }
+            String title = new String(titles, titleOffsets[index],
+                    titleOffsets[index + 1] - titleOffsets[index], StandardCharsets.UTF_8);
+            products.add(Product.withPriceCents(barcodes[index], title, prices[index]));
+        }
+
+        List<Purchase> purchases = new ArrayList<>(numPurchases);
+        for (int index = 0; index < numPurchases; index++) {
+            if (productIndexes[index] < 0 || productIndexes[index] >= numProducts) {
+                throw new IOException("Corrupt snapshot file " + file + ": purchase " + index
+                        + " refers to product " + productIndexes[index] + " of " + numProducts);
+            }
+            purchases.add(new Purchase(products.get(productIndexes[index]), counts[index], revenues[index]));
+        }
+
+        return new PurchaseSnapshot(products, purchases);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    /**
+     * writes the columns of a snapshot through a fixed size buffer, which is flushed to the file whenever it is full
+     */
+    private static class ColumnWriter implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+        ColumnWriter(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        ColumnWriter putInt(int value) throws IOException {
+            if (this.buffer.remaining() < Integer.BYTES) this.flush();
+            this.buffer.putInt(value);
+            return this;
+        }
+
+        ColumnWriter putLong(long value) throws IOException {
+            if (this.buffer.remaining() < Long.BYTES) this.flush();
+            this.buffer.putLong(value);
+            return this;
+        }
+
+        ColumnWriter put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!this.buffer.hasRemaining()) this.flush();
+                int length = Math.min(bytes.length - offset, this.buffer.remaining());
+                this.buffer.put(bytes, offset, length);
+                offset += length;
+            }
+            return this;
+        }
+
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) this.channel.write(this.buffer);
+            this.buffer.clear();
+        }
+
+        /**
+         * flushes the remaining columns, forces them to the storage device and closes the file
+         */
+        @Override
+        public void close() throws IOException {
+            try (this.channel) {
+                this.flush();
+                this.channel.force(true);
+            }
+        }
+    }
+}
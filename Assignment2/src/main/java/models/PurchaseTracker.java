@@ -2,21 +2,60 @@ package models;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.function.LongFunction;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
 
 public class PurchaseTracker {
-    private final String PURCHASE_FILE_PATTERN = ".*\\.txt";
+    static final String PURCHASE_FILE_PATTERN = ".*\\.txt";
+    // also matches compressed purchase files, of which the vault lists the names without the compression extension
+    private static final Pattern PURCHASE_FILE_NAMES = Pattern.compile(PURCHASE_FILE_PATTERN);
+    private static final String VOLUME = "volume", REVENUE_CENTS = "revenueCents";  // the maintained aggregates of purchases
+    private static final int TOP_SELLERS_CAPACITY = 1024;   // the counters of the top sellers sketch
+    private static final int QUERY_CACHE_SIZE = 64;         // the number of cached query results
+    private static final int MAX_OPEN_FILES = 256;          // the files that are read concurrently on virtual threads
+    private static final int BATCH_SIZE = 4096;             // the purchases per batch from a reader to a merge worker
 
-    private OrderedList<Product> products;        // the reference list of all Products available from the SuperMarket chain
+    private final AtomicReference<ProductCatalog> catalog;  // the published version of all Products available from the SuperMarket chain
     private OrderedList<Purchase> purchases;      // the aggregated volumes of all purchases of all products across all branches
+    private SalesCube salesCube;                  // the volumes and revenues of all purchases by date, city, branch and product
+    private SpaceSavingSketch topSellers;         // the approximate volumes of the best selling barcodes
+    private SalesTimeSeries salesTimeSeries;      // the daily volumes of every barcode, by the date folders of the vault
+    private ImportStatistics importStatistics;    // the metrics of the latest import run of purchases
+    private SalesQueryEngine queryEngine;         // executes and caches ad hoc queries over the purchases
 
     public PurchaseTracker() {
-        products = new OrderedArrayList<>(Comparator.comparing(Product::getBarcode));
+        catalog = new AtomicReference<>(ProductCatalog.EMPTY);
         purchases = new OrderedArrayList<>(Comparator.comparing(Purchase::getBarcode));
+        purchases.registerAggregate(VOLUME, Purchase::getCount);
+        purchases.registerAggregate(REVENUE_CENTS, Purchase::getRevenueCents);
+        salesCube = new SalesCube();
+        topSellers = new SpaceSavingSketch(TOP_SELLERS_CAPACITY);
+        salesTimeSeries = new SalesTimeSeries();
+        importStatistics = new ImportStatistics();
+        queryEngine = new SalesQueryEngine(purchases, QUERY_CACHE_SIZE);
     }
 
     /**
@@ -25,16 +64,47 @@ public class PurchaseTracker {
      * @param resourceName
      */
     public void importProductsFromVault(String resourceName) {
-        this.products.clear();
+        try (Vault vault = Vault.ofResource(resourceName)) {
+            this.importProductsFromFile(vault, vault.getRoot(), resourceName);
+        }
+    }
 
+    /**
+     * imports all products from a products file outside of the resources, e.g. of a generated vault
+     *
+     * @param productsFile
+     */
+    public void importProductsFromVault(Path productsFile) {
+        try (Vault vault = Vault.open(productsFile)) {
+            this.importProductsFromFile(vault, vault.getRoot(), productsFile.toString());
+        }
+    }
+
+    private void importProductsFromFile(Vault vault, Path productsFile, String vaultName) {
         // load all products from the text file
-        importItemsFromFile(this.products,
-                PurchaseTracker.class.getResource(resourceName).getPath(),
-                Product::fromLine);
+        List<Product> newProducts = new ArrayList<>();
+        vault.forEachLine(productsFile, line -> newProducts.add(Product.fromLine(line)));
 
-        this.products.sort();
+        ProductCatalog newCatalog = this.publishCatalog(newProducts);
 
-        System.out.printf("Imported %d products from %s.\n", products.size(), resourceName);
+        System.out.printf("Imported %d products from %s.\n", newCatalog.size(), vaultName);
+    }
+
+    /**
+     * publishes a new version of the product catalog, which replaces the current version atomically.
+     * Files that are being merged while the new version is published keep finding their products
+     * in the version that was current when their merge started, without any locks.
+     * Purchases keep the revenue at the prices of the version by which they have been parsed.
+     *
+     * @param newProducts the products of the new version
+     * @return the published catalog
+     */
+    public ProductCatalog publishCatalog(List<Product> newProducts) {
+        while (true) {
+            ProductCatalog currentCatalog = this.catalog.get();
+            ProductCatalog newCatalog = new ProductCatalog(currentCatalog.getVersion() + 1, newProducts);
+            if (this.catalog.compareAndSet(currentCatalog, newCatalog)) return newCatalog;
+        }
     }
 
     /**
@@ -43,31 +113,578 @@ public class PurchaseTracker {
      * @param resourceName
      */
     public void importPurchasesFromVault(String resourceName) {
+        try (Vault vault = Vault.ofResource(resourceName)) {
+            this.importPurchasesFromDirectory(vault, resourceName);
+        }
+    }
+
+    /**
+     * imports and merges all raw purchase data of all branches from a vault outside of the resources,
+     * e.g. a generated vault, which may be a directory or a zip archive of the purchases directory
+     *
+     * @param vaultRoot
+     */
+    public void importPurchasesFromVault(Path vaultRoot) {
+        try (Vault vault = Vault.open(vaultRoot)) {
+            this.importPurchasesFromDirectory(vault, vaultRoot.toString());
+        }
+    }
+
+    /**
+     * clears the accumulated purchases and the sales statistics, and starts new import statistics
+     */
+    private void resetImportState() {
         this.purchases.clear();
+        this.salesCube.clear();
+        this.topSellers.clear();
+        this.salesTimeSeries.clear();
+        this.importStatistics = new ImportStatistics();
+    }
+
+    private void importPurchasesFromDirectory(Vault vault, String vaultName) {
+        this.resetImportState();
+
+        List<Path> purchaseFiles = vault.listFiles(vault.getRoot(), PURCHASE_FILE_NAMES);
+
+        // compressed files are decompressed ahead on other threads, while this thread parses and merges
+        try (DecompressionPipeline pipeline = new DecompressionPipeline(
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1))) {
+            List<DecompressionPipeline.DecompressedFile> decompressedFiles = new ArrayList<>();
+            for (Path file : purchaseFiles) {
+                decompressedFiles.add(Vault.isCompressed(file) ? pipeline.submit(vault, file) : null);
+            }
+
+            for (int index = 0; index < purchaseFiles.size(); index++) {
+                Path file = purchaseFiles.get(index);
+                if (decompressedFiles.get(index) != null) {
+                    this.mergePurchasesFromCompressedFile(this.purchases, decompressedFiles.get(index),
+                            vault.sizeOf(file), vault.locationOf(file));
+                } else {
+                    this.mergePurchasesFromFile(this.purchases, vault, file);
+                }
+            }
+        }
 
-        mergePurchasesFromFileRecursively(
-                PurchaseTracker.class.getResource(resourceName).getPath());
+        System.out.printf("Accumulated purchases of %d products from files in %s.\n", this.purchases.size(), vaultName);
+    }
 
-        System.out.printf("Accumulated purchases of %d products from files in %s.\n", this.purchases.size(), resourceName);
+    /**
+     * imports and merges all raw purchase data of all branches from the hierarchical file structure of the vault
+     * like importPurchasesFromVault, but merges the files on numThreads threads concurrently
+     * into one shared ConcurrentOrderedList. Afterwards the accumulated purchases are copied into this.purchases.
+     *
+     * @param resourceName
+     * @param numThreads   the number of threads that import and merge the files of the vault
+     */
+    public void importPurchasesFromVault(String resourceName, int numThreads) {
+        try (Vault vault = Vault.ofResource(resourceName)) {
+            this.importPurchasesFromDirectory(vault, resourceName, numThreads);
+        }
     }
 
     /**
-     * traverses the purchases vault recursively and processes every data file that it finds
+     * imports and merges all raw purchase data of all branches from a vault outside of the resources
+     * like importPurchasesFromVault(vaultRoot), but on numThreads threads concurrently
      *
-     * @param filePath
+     * @param vaultRoot
+     * @param numThreads the number of threads that import and merge the files of the vault
+     */
+    public void importPurchasesFromVault(Path vaultRoot, int numThreads) {
+        try (Vault vault = Vault.open(vaultRoot)) {
+            this.importPurchasesFromDirectory(vault, vaultRoot.toString(), numThreads);
+        }
+    }
+
+    private void importPurchasesFromDirectory(Vault vault, String vaultName, int numThreads) {
+        this.resetImportState();
+
+        List<Path> purchaseFiles = vault.listFiles(vault.getRoot(), PURCHASE_FILE_NAMES);
+
+        OrderedList<Purchase> sharedPurchases = new ConcurrentOrderedList<>(this.purchases.getOrdening());
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> merges = new ArrayList<>();
+            for (Path file : purchaseFiles) {
+                merges.add(executor.submit(() -> this.mergePurchasesFromFile(sharedPurchases, vault, file)));
+            }
+            for (Future<?> merge : merges) {
+                merge.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Import of purchases from " + vaultName + " has been interrupted");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Import of purchases from " + vaultName + " has failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the shared list iterates in the order of barcodes already, so sorting the copy takes linear time
+        this.purchases.addAll(sharedPurchases);
+        this.purchases.sort();
+
+        System.out.printf("Accumulated purchases of %d products from files in %s on %d threads.\n",
+                this.purchases.size(), vaultName, numThreads);
+    }
+
+    /**
+     * imports and merges all raw purchase data of all branches from the hierarchical file structure of the vault
+     * like importPurchasesFromVault, but tolerates slow storage: every file is opened, read and parsed on its own
+     * virtual thread, which does not occupy a platform thread while it waits for I/O.
+     * The parsed purchases are handed in batches through a bounded queue to numMergeWorkers platform threads,
+     * which merge them into one shared ConcurrentOrderedList. The bounded queue blocks the readers while the merge
+     * workers fall behind, and at most MAX_OPEN_FILES files are read at the same time.
+     * Afterwards the accumulated purchases are copied into this.purchases.
+     *
+     * @param resourceName
+     * @param numMergeWorkers the number of threads that merge the parsed purchases
+     */
+    public void importPurchasesFromVaultOnVirtualThreads(String resourceName, int numMergeWorkers) {
+        try (Vault vault = Vault.ofResource(resourceName)) {
+            this.importPurchasesOnVirtualThreads(vault, resourceName, numMergeWorkers);
+        }
+    }
+
+    /**
+     * imports and merges all raw purchase data of all branches from a vault outside of the resources
+     * like importPurchasesFromVaultOnVirtualThreads, e.g. a generated vault on slow storage
+     *
+     * @param vaultRoot
+     * @param numMergeWorkers the number of threads that merge the parsed purchases
+     */
+    public void importPurchasesFromVaultOnVirtualThreads(Path vaultRoot, int numMergeWorkers) {
+        try (Vault vault = Vault.open(vaultRoot)) {
+            this.importPurchasesOnVirtualThreads(vault, vaultRoot.toString(), numMergeWorkers);
+        }
+    }
+
+    private void importPurchasesOnVirtualThreads(Vault vault, String vaultName, int numMergeWorkers) {
+        this.resetImportState();
+
+        List<Path> purchaseFiles = vault.listFiles(vault.getRoot(), PURCHASE_FILE_NAMES);
+
+        OrderedList<Purchase> sharedPurchases = new ConcurrentOrderedList<>(this.purchases.getOrdening());
+        BlockingQueue<PurchaseBatch> batches = new ArrayBlockingQueue<>(4 * numMergeWorkers);
+        AtomicReference<Throwable> mergeFailure = new AtomicReference<>();
+        Semaphore openFiles = new Semaphore(MAX_OPEN_FILES);
+
+        ExecutorService mergeWorkers = Executors.newFixedThreadPool(numMergeWorkers);
+        try {
+            for (int worker = 0; worker < numMergeWorkers; worker++) {
+                mergeWorkers.execute(() -> this.mergeBatches(sharedPurchases, batches, mergeFailure));
+            }
+
+            List<Future<?>> reads = new ArrayList<>();
+            try (ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (Path file : purchaseFiles) {
+                    reads.add(readers.submit(() -> {
+                        openFiles.acquire();
+                        try {
+                            this.readPurchaseBatches(vault, file, batches);
+                        } finally {
+                            openFiles.release();
+                        }
+                        return null;
+                    }));
+                }
+            }   // waits until all files have been read
+
+            for (int worker = 0; worker < numMergeWorkers; worker++) {
+                batches.put(PurchaseBatch.END_OF_IMPORT);
+            }
+            mergeWorkers.shutdown();
+            mergeWorkers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+            for (Future<?> read : reads) {
+                read.get();
+            }
+            if (mergeFailure.get() != null) {
+                throw new RuntimeException("Import of purchases from " + vaultName + " has failed", mergeFailure.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Import of purchases from " + vaultName + " has been interrupted");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Import of purchases from " + vaultName + " has failed", e.getCause());
+        } finally {
+            mergeWorkers.shutdownNow();
+        }
+
+        // the shared list iterates in the order of barcodes already, so sorting the copy takes linear time
+        this.purchases.addAll(sharedPurchases);
+        this.purchases.sort();
+
+        System.out.printf("Accumulated purchases of %d products from files in %s"
+                        + " on virtual threads with %d merge workers.\n",
+                this.purchases.size(), vaultName, numMergeWorkers);
+    }
+
+    /**
+     * a batch of parsed purchases of a file, which is handed from a reading thread to a merge worker
      */
-    private void mergePurchasesFromFileRecursively(String filePath) {
-        File file = new File(filePath);
+    private static class PurchaseBatch {
+        static final PurchaseBatch END_OF_IMPORT = new PurchaseBatch(null, List.of());
 
-        if (file.isDirectory()) {
-            File[] filesInDirectory = Objects.requireNonNullElse(file.listFiles(), new File[0]);
-            for (File value : filesInDirectory) {
-                mergePurchasesFromFileRecursively(value.getAbsolutePath());
+        final FileImport file;
+        final List<Purchase> purchases;
+
+        PurchaseBatch(FileImport file, List<Purchase> purchases) {
+            this.file = file;
+            this.purchases = purchases;
+        }
+    }
+
+    /**
+     * the progress of the import of one file, of which the batches may be merged by several merge workers.
+     * The file is complete when it has been read and all of its batches have been merged.
+     */
+    private class FileImport {
+        final ImportStatistics.FileStatistics fileStatistics;
+        final VaultLocation location;
+        final AtomicInteger numPendingParts = new AtomicInteger(1);     // the reading of the file, and each batch
+        final AtomicLong numPurchases = new AtomicLong(), mergeNanos = new AtomicLong();
+
+        FileImport(String filePath, VaultLocation location) {
+            this.fileStatistics = new ImportStatistics.FileStatistics(filePath, location);
+            this.location = location;
+        }
+
+        void completeParts(int numParts) {
+            if (this.numPendingParts.addAndGet(-numParts) == 0) {
+                // all other parts have completed before, so their counts are visible here
+                this.fileStatistics.countMerge(this.numPurchases.get(), this.mergeNanos.get());
+                this.fileStatistics.finish();
+                importStatistics.add(this.fileStatistics);
+            }
+        }
+    }
+
+    /**
+     * reads and parses a purchase file and puts its purchases in batches into the queue of the merge workers
+     */
+    private void readPurchaseBatches(Vault vault, Path file, BlockingQueue<PurchaseBatch> batches)
+            throws InterruptedException {
+        FileImport fileImport = new FileImport(file.toString(), vault.locationOf(file));
+        ImportStatistics.FileStatistics fileStatistics = fileImport.fileStatistics;
+        LongFunction<Product> productLookup = this.productLookup(fileStatistics);
+
+        List<Purchase> batch = new ArrayList<>(BATCH_SIZE);
+        vault.forEachLine(file, line -> {
+            fileStatistics.countLine();
+            batch.add(Purchase.fromLine(line, productLookup, fileStatistics::countFailure));
+            if (batch.size() == BATCH_SIZE) {
+                fileImport.numPendingParts.incrementAndGet();
+                try {
+                    batches.put(new PurchaseBatch(fileImport, new ArrayList<>(batch)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Reading " + file + " has been interrupted");
+                }
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            fileImport.numPendingParts.incrementAndGet();
+            batches.put(new PurchaseBatch(fileImport, batch));
+        }
+
+        fileStatistics.countBytes(vault.sizeOf(file));
+        fileImport.completeParts(1);
+    }
+
+    /**
+     * takes batches from the queue and merges them into the target list, until the end of the import
+     * After a failure the worker keeps taking batches, such that the reading threads are not blocked forever.
+     */
+    private void mergeBatches(OrderedList<Purchase> target, BlockingQueue<PurchaseBatch> batches,
+                              AtomicReference<Throwable> failure) {
+        try {
+            for (PurchaseBatch batch = batches.take(); batch != PurchaseBatch.END_OF_IMPORT; batch = batches.take()) {
+                if (failure.get() != null) continue;
+                try {
+                    FileImport fileImport = batch.file;
+                    fileImport.numPurchases.addAndGet(this.addToSalesStatistics(batch.purchases, fileImport.location));
+                    long mergeStart = System.nanoTime();
+                    target.mergeAll(batch.purchases, this::add);
+                    fileImport.mergeNanos.addAndGet(System.nanoTime() - mergeStart);
+                    fileImport.completeParts(1);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * imports and merges all raw purchase data of all branches from the hierarchical file structure of the vault
+     * like importPurchasesFromVault, but without any contention between the threads that merge the purchases:
+     * the purchases are partitioned into numShards shards by ranges of barcodes of about equal numbers of products,
+     * and every shard is merged by its own writer thread. numParsers threads parse the files and route the purchases
+     * of every file through lock-free queues to the writers of their shards.
+     * The totals are summed across the shards and the shards are concatenated in the order of the barcodes,
+     * so this.purchases is ordered when the shards have been copied into it.
+     *
+     * @param resourceName
+     * @param numParsers   the number of threads that parse the files of the vault
+     * @param numShards    the number of shards, which may be reduced for a small catalog
+     */
+    public void importPurchasesFromVaultSharded(String resourceName, int numParsers, int numShards) {
+        try (Vault vault = Vault.ofResource(resourceName)) {
+            this.importPurchasesSharded(vault, resourceName, numParsers, numShards);
+        }
+    }
+
+    /**
+     * imports and merges all raw purchase data of all branches from a vault outside of the resources
+     * like importPurchasesFromVaultSharded
+     *
+     * @param vaultRoot
+     * @param numParsers the number of threads that parse the files of the vault
+     * @param numShards  the number of shards, which may be reduced for a small catalog
+     */
+    public void importPurchasesFromVaultSharded(Path vaultRoot, int numParsers, int numShards) {
+        try (Vault vault = Vault.open(vaultRoot)) {
+            this.importPurchasesSharded(vault, vaultRoot.toString(), numParsers, numShards);
+        }
+    }
+
+    private void importPurchasesSharded(Vault vault, String vaultName, int numParsers, int numShards) {
+        this.resetImportState();
+
+        List<Path> purchaseFiles = vault.listFiles(vault.getRoot(), PURCHASE_FILE_NAMES);
+
+        long[] shardBounds = ShardedOrderedList.lowerBoundsOf(this.catalog.get().getBarcodes(), numShards);
+        ShardedOrderedList<Purchase> shards = new ShardedOrderedList<>(this.purchases.getOrdening(),
+                shardBounds, Purchase::getBarcode, this::add);
+        // closing the shards waits until their writers have merged all routed purchases
+        try (shards) {
+            shards.registerAggregate(VOLUME, Purchase::getCount);
+            shards.registerAggregate(REVENUE_CENTS, Purchase::getRevenueCents);
+
+            ExecutorService parsers = Executors.newFixedThreadPool(numParsers);
+            try {
+                List<Future<?>> routings = new ArrayList<>();
+                for (Path file : purchaseFiles) {
+                    routings.add(parsers.submit(() -> this.routePurchasesFromFile(shards, vault, file)));
+                }
+                for (Future<?> routing : routings) {
+                    routing.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Import of purchases from " + vaultName + " has been interrupted");
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Import of purchases from " + vaultName + " has failed", e.getCause());
+            } finally {
+                parsers.shutdownNow();
+            }
+        }
+
+        shards.copyTo(this.purchases);
+        System.out.printf("Accumulated purchases of %d products with a volume of %d from files in %s"
+                        + " on %d parsers and %d shards.\n",
+                shards.size(), shards.getAggregate(VOLUME), vaultName, numParsers, shards.getNumShards());
+        // the shards are concatenated in the order of barcodes already, so sorting takes linear time
+        this.purchases.sort();
+    }
+
+    /**
+     * imports the raw purchase data of a file and routes the purchases to the shards of their barcodes.
+     * The statistics of the file are completed by the writer of the last shard that merges some of its purchases.
+     */
+    private void routePurchasesFromFile(ShardedOrderedList<Purchase> shards, Vault vault, Path file) {
+        VaultLocation location = vault.locationOf(file);
+        FileImport fileImport = new FileImport(file.toString(), location);
+        List<Purchase> newPurchases = this.readPurchasesFromFile(vault, file, fileImport.fileStatistics);
+        fileImport.numPurchases.addAndGet(this.addToSalesStatistics(newPurchases, location));
+
+        // reserve a part for every shard before any writer can complete one, and release the unused ones afterwards
+        fileImport.numPendingParts.addAndGet(shards.getNumShards());
+        int numBatches = shards.addAll(newPurchases, mergeNanos -> {
+            fileImport.mergeNanos.addAndGet(mergeNanos);
+            fileImport.completeParts(1);
+        });
+        fileImport.completeParts(shards.getNumShards() - numBatches + 1);
+    }
+
+    /**
+     * imports and aggregates all raw purchase data of all branches from the hierarchical file structure of the vault
+     * like importPurchasesFromVault, but for vaults that do not fit in memory as Purchase instances.
+     * Every line is added to an ExternalAggregator right after it has been parsed, which keeps the volumes and
+     * revenues of at most maxBarcodesInMemory barcodes in memory and spills sorted runs of
+     * (barcode, volume, revenue cents) to temporary files, so revenues remain at the prices by which they were parsed.
+     * The runs are merged by barcode into this.purchases at the end, which then holds one purchase per product.
+     * Barcodes that are no longer in the catalog at the end, because a new version has been published meanwhile,
+     * are skipped and counted.
+     * The sales cube is not fed by this import and remains empty, but the top sellers sketch and the time series are.
+     *
+     * @param resourceName
+     * @param maxBarcodesInMemory the memory budget of the aggregation, in distinct barcodes
+     */
+    public void importPurchasesFromVaultExternally(String resourceName, int maxBarcodesInMemory) {
+        try (Vault vault = Vault.ofResource(resourceName)) {
+            this.importPurchasesExternally(vault, resourceName, maxBarcodesInMemory);
+        }
+    }
+
+    /**
+     * imports and aggregates all raw purchase data of all branches from a vault outside of the resources
+     * like importPurchasesFromVaultExternally, e.g. a generated vault that does not fit in memory
+     *
+     * @param vaultRoot
+     * @param maxBarcodesInMemory the memory budget of the aggregation, in distinct barcodes
+     */
+    public void importPurchasesFromVaultExternally(Path vaultRoot, int maxBarcodesInMemory) {
+        try (Vault vault = Vault.open(vaultRoot)) {
+            this.importPurchasesExternally(vault, vaultRoot.toString(), maxBarcodesInMemory);
+        }
+    }
+
+    private void importPurchasesExternally(Vault vault, String vaultName, int maxBarcodesInMemory) {
+        this.resetImportState();
+
+        List<Path> purchaseFiles = vault.listFiles(vault.getRoot(), PURCHASE_FILE_NAMES);
+
+        int numRuns;
+        long[] numUnknownBarcodes = {0};
+        try (ExternalAggregator aggregator = new ExternalAggregator(maxBarcodesInMemory)) {
+            for (Path file : purchaseFiles) {
+                this.aggregatePurchasesFromFile(aggregator, vault, file);
+            }
+            numRuns = aggregator.getNumRuns();
+
+            // the totals arrive in the order of barcodes, so sorting the purchases afterwards takes linear time
+            aggregator.mergeRuns((barcode, volume, revenueCents) -> {
+                Product product = this.findProduct(barcode);
+                if (product == null) {
+                    numUnknownBarcodes[0]++;
+                    return;
+                }
+                this.purchases.add(new Purchase(product, volume, revenueCents));
+            });
+            this.purchases.sort();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot aggregate purchases from " + vaultName, e);
+        }
+
+        System.out.printf("Accumulated purchases of %d products from files in %s with %d spilled runs"
+                        + " and %d barcodes that are no longer in the catalog.\n",
+                this.purchases.size(), vaultName, numRuns, numUnknownBarcodes[0]);
+    }
+
+    /**
+     * parses the purchases of a text file one line at a time and adds their counts to the aggregator,
+     * without keeping any Purchase instance
+     */
+    private void aggregatePurchasesFromFile(ExternalAggregator aggregator, Vault vault, Path file) {
+        VaultLocation location = vault.locationOf(file);
+        ImportStatistics.FileStatistics fileStatistics = new ImportStatistics.FileStatistics(file.toString(), location);
+        LongFunction<Product> productLookup = this.productLookup(fileStatistics);
+        long epochDay = SalesTimeSeries.epochDayOf(location.getDate());
+        long[] numPurchases = {0};
+        long aggregateStart = System.nanoTime();
+
+        vault.forEachLine(file, line -> {
+            fileStatistics.countLine();
+            Purchase purchase = Purchase.fromLine(line, productLookup, fileStatistics::countFailure);
+            if (purchase != null) {
+                try {
+                    aggregator.add(purchase.getBarcode(), purchase.getCount(), purchase.getRevenueCents());
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot spill the aggregated purchases of " + file, e);
+                }
+                this.topSellers.add(purchase.getBarcode(), purchase.getCount());
+                if (epochDay != Long.MIN_VALUE) {
+                    this.salesTimeSeries.add(purchase.getBarcode(), epochDay, purchase.getCount());
+                }
+                numPurchases[0]++;
             }
+        });
+
+        fileStatistics.countBytes(vault.sizeOf(file));
+        fileStatistics.countMerge(numPurchases[0], System.nanoTime() - aggregateStart);
+        fileStatistics.finish();
+        this.importStatistics.add(fileStatistics);
+    }
+
+    /**
+     * imports all raw purchase data of all branches from the vault, like importPurchasesFromVault,
+     * and then keeps watching the vault for new or appended purchase files.
+     * Only the lines that are appended after the last merge are merged into the accumulated purchases,
+     * so totals and tops stay current without a full reload.
+     * Changes are merged when the caller polls the returned watcher, or by running the watcher on its own thread.
+     *
+     * @param resourceName
+     * @return the watcher that tracks the file offsets and merges new purchases into this tracker
+     */
+    public PurchaseVaultWatcher watchPurchasesVault(String resourceName) {
+        this.resetImportState();
+
+        PurchaseVaultWatcher watcher = null;
+        try {
+            // the watcher takes over the vault and closes it, also when it cannot watch it
+            watcher = new PurchaseVaultWatcher(this, Vault.ofResource(resourceName));
+            watcher.catchUp();
+
+            System.out.printf("Accumulated purchases of %d products from files in %s, watching for changes.\n",
+                    this.purchases.size(), resourceName);
+            return watcher;
+        } catch (IOException e) {
+            closeQuietly(watcher);
+            throw new UncheckedIOException("Cannot watch purchases vault " + resourceName, e);
+        } catch (RuntimeException e) {
+            closeQuietly(watcher);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(PurchaseVaultWatcher watcher) {
+        if (watcher == null) return;
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            // the watcher is abandoned after a failure, which is reported instead
+        }
+    }
+
+    /**
+     * saves the product catalog and the aggregated purchases into a binary columnar snapshot file
+     *
+     * @param snapshotFile
+     */
+    public void saveSnapshot(Path snapshotFile) {
+        try {
+            PurchaseSnapshot.save(snapshotFile, this.catalog.get(), this.purchases);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot save snapshot " + snapshotFile, e);
+        }
+    }
 
-        } else if (file.getName().matches(PURCHASE_FILE_PATTERN)) {
-            this.mergePurchasesFromFile(file.getAbsolutePath());
+    /**
+     * replaces the product catalog and the aggregated purchases by the content of a snapshot file,
+     * which brings the tracker into a query ready state without parsing the vault.
+     * The sales cube, the top sellers sketch and the time series are not part of the snapshot and remain empty
+     * until purchases are imported again.
+     *
+     * @param snapshotFile
+     */
+    public void loadSnapshot(Path snapshotFile) {
+        PurchaseSnapshot snapshot;
+        try {
+            snapshot = PurchaseSnapshot.load(snapshotFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load snapshot " + snapshotFile, e);
         }
+
+        ProductCatalog newCatalog = this.publishCatalog(snapshot.getProducts());
+        this.resetImportState();
+        this.purchases.addAll(snapshot.getPurchases());
+        this.purchases.sort();
+
+        System.out.printf("Loaded %d products and purchases of %d products from %s.\n",
+                newCatalog.size(), this.purchases.size(), snapshotFile);
     }
 
     /**
@@ -77,21 +694,241 @@ public class PurchaseTracker {
      * @param subTitle some title text that clarifies the list
      * @param ranker   the comparator used to rank the purchases
      */
-    public void showTops(int n, String subTitle, Comparator<Purchase> ranker) {
+    public synchronized void showTops(int n, String subTitle, Comparator<Purchase> ranker) {
+        System.out.printf("%d purchases with %s:\n", n, subTitle);
+
+        List<Purchase> tops = this.findTops(n, ranker);
+
+        // show the top items
+        for (int rankItem = 0; rankItem < tops.size(); rankItem++) {
+            System.out.printf("%d: %s\n", rankItem + 1, tops.get(rankItem));
+        }
+    }
+
+    /**
+     * finds the top n purchases according to the ranking criterium specified by ranker
+     * without sorting a copy of all purchases
+     *
+     * @param n      the maximum number of top purchases to be found
+     * @param ranker the comparator used to rank the purchases
+     * @return a new list with at most n purchases, ordered by ranker
+     */
+    public synchronized List<Purchase> findTops(int n, Comparator<Purchase> ranker) {
+        return selectTops(this.purchases, n, ranker);
+    }
+
+    /**
+     * selects the n best ranked items by a single pass across all items, which maintains a bounded heap of
+     * the best candidates so far. The head of the heap is the worst candidate, which is the one to be displaced
+     * by any better item. For m items this takes O(m log n) time and O(n) extra memory.
+     *
+     * @param items  the items to select from
+     * @param n      the maximum number of items to be selected
+     * @param ranker the comparator used to rank the items
+     * @param <E>    the (generic) type of each item
+     * @return a new list with at most n items, ordered by ranker
+     */
+    public static <E> List<E> selectTops(Iterable<? extends E> items, int n, Comparator<? super E> ranker) {
+        if (n <= 0) return new ArrayList<>();
+
+        PriorityQueue<E> candidates = new PriorityQueue<>(Math.min(n, 1024) + 1, ranker.reversed());
+        for (E item : items) {
+            if (candidates.size() < n) {
+                candidates.add(item);
+            } else if (ranker.compare(item, candidates.peek()) < 0) {
+                candidates.poll();
+                candidates.add(item);
+            }
+        }
+
+        List<E> tops = new ArrayList<>(candidates);
+        tops.sort(ranker);
+        return tops;
+    }
+
+    /**
+     * show the top n purchases ranked by a numeric key of every purchase
+     *
+     * @param n            the number of top purchases to be shown
+     * @param subTitle     some title text that clarifies the list
+     * @param key          the ranking key of a purchase, which is computed once per purchase
+     * @param highestFirst whether the purchases with the highest keys rank first, or those with the lowest keys
+     */
+    public synchronized void showTops(int n, String subTitle, ToLongFunction<? super Purchase> key,
+                                      boolean highestFirst) {
         System.out.printf("%d purchases with %s:\n", n, subTitle);
-        OrderedList<Purchase> tops = new OrderedArrayList<>(ranker);
 
-        // add all purchases to the new tops list
-        tops.addAll(this.purchases);
-        // sort the list
-        tops.sort();
+        List<Purchase> tops = this.findTopsByKey(n, key, highestFirst);
 
         // show the top items
-        for (int rankItem = 0; rankItem < n && rankItem < tops.size(); rankItem++) {
+        for (int rankItem = 0; rankItem < tops.size(); rankItem++) {
             System.out.printf("%d: %s\n", rankItem + 1, tops.get(rankItem));
         }
     }
 
+    /**
+     * finds the top n purchases ranked by a long key, such as the revenue in cents
+     *
+     * @param n            the maximum number of top purchases to be found
+     * @param key          the ranking key of a purchase, which is computed once per purchase
+     * @param highestFirst whether the purchases with the highest keys rank first, or those with the lowest keys
+     * @return a new list with at most n purchases, ordered by rank
+     */
+    public synchronized List<Purchase> findTopsByKey(int n, ToLongFunction<? super Purchase> key,
+                                                  boolean highestFirst) {
+        return selectTopsByKey(this.purchases, n, key, highestFirst);
+    }
+
+    /**
+     * finds the top n purchases ranked by a double key, such as a revenue share
+     *
+     * @param n            the maximum number of top purchases to be found
+     * @param key          the ranking key of a purchase, which is computed once per purchase
+     * @param highestFirst whether the purchases with the highest keys rank first, or those with the lowest keys
+     * @return a new list with at most n purchases, ordered by rank
+     */
+    public synchronized List<Purchase> findTopsByDoubleKey(int n, ToDoubleFunction<? super Purchase> key,
+                                                        boolean highestFirst) {
+        return selectTopsByKey(this.purchases, n, item -> sortableKey(key.applyAsDouble(item)), highestFirst);
+    }
+
+    /**
+     * selects the n best ranked items by a numeric key. The key of every item is computed once into a primitive array,
+     * and a bounded heap of item indexes is maintained by comparisons of those keys only.
+     * Items with equal keys rank in the order of the items.
+     * For m items this takes O(m log n) comparisons, and m evaluations of the key function.
+     *
+     * @param items        the items to select from
+     * @param n            the maximum number of items to be selected
+     * @param key          the ranking key of an item
+     * @param highestFirst whether the items with the highest keys rank first, or those with the lowest keys
+     * @param <E>          the (generic) type of each item
+     * @return a new list with at most n items, ordered by rank
+     */
+    public static <E> List<E> selectTopsByKey(List<? extends E> items, int n, ToLongFunction<? super E> key,
+                                              boolean highestFirst) {
+        Object[] elements = items.toArray();
+        n = Math.min(n, elements.length);
+        if (n <= 0) return new ArrayList<>();
+
+        long[] keys = new long[elements.length];
+        for (int index = 0; index < elements.length; index++) {
+            @SuppressWarnings("unchecked")
+            long itemKey = key.applyAsLong((E) elements[index]);
+            // the complement reverses the order of the keys without any overflow
+            keys[index] = highestFirst ? itemKey : ~itemKey;
+        }
+
+        // the head of the heap is the index of the worst candidate so far
+        int[] candidates = new int[n];
+        int numCandidates = 0;
+        for (int index = 0; index < elements.length; index++) {
+            if (numCandidates < n) {
+                candidates[numCandidates] = index;
+                siftUp(candidates, numCandidates++, keys);
+            } else if (keys[index] > keys[candidates[0]]) {
+                candidates[0] = index;
+                siftDown(candidates, 0, n, keys);
+            }
+        }
+
+        // sort the candidates in place by moving the worst remaining candidate to the back, one at a time
+        for (int end = n - 1; end > 0; end--) {
+            int worst = candidates[0];
+            candidates[0] = candidates[end];
+            candidates[end] = worst;
+            siftDown(candidates, 0, end, keys);
+        }
+
+        List<E> tops = new ArrayList<>(n);
+        for (int candidate : candidates) {
+            @SuppressWarnings("unchecked")
+            E item = (E) elements[candidate];
+            tops.add(item);
+        }
+        return tops;
+    }
+
+    /**
+     * @return whether the item at index1 ranks below the item at index2
+     */
+    private static boolean ranksBelow(int index1, int index2, long[] keys) {
+        return keys[index1] < keys[index2] || (keys[index1] == keys[index2] && index1 > index2);
+    }
+
+    private static void siftUp(int[] heap, int position, long[] keys) {
+        int item = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!ranksBelow(item, heap[parent], keys)) break;
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = item;
+    }
+
+    private static void siftDown(int[] heap, int position, int heapSize, long[] keys) {
+        int item = heap[position];
+        while (2 * position + 1 < heapSize) {
+            int child = 2 * position + 1;
+            if (child + 1 < heapSize && ranksBelow(heap[child + 1], heap[child], keys)) child++;
+            if (!ranksBelow(heap[child], item, keys)) break;
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = item;
+    }
+
+    /**
+     * maps a double onto a long with the same order, such that double keys can be ranked as long keys
+     *
+     * @param value
+     * @return a long which compares to the sortable keys of other doubles like value compares to those doubles
+     */
+    static long sortableKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        // negative doubles order in reverse by their bits, so flip all bits except the sign
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * show the rows of the result of an ad hoc sales query
+     *
+     * @param subTitle some title text that clarifies the query
+     * @param query
+     */
+    public synchronized void showQuery(String subTitle, SalesQuery query) {
+        List<SalesQueryEngine.Row> rows = this.query(query);
+        System.out.printf("%d %s:\n", rows.size(), subTitle);
+
+        for (int rankRow = 0; rankRow < rows.size(); rankRow++) {
+            System.out.printf("%d: %s\n", rankRow + 1, rows.get(rankRow));
+        }
+    }
+
+    /**
+     * executes an ad hoc sales query over the aggregated purchases, or reuses its result of an earlier execution
+     * if the purchases have not changed since
+     *
+     * @param query
+     * @return the rows of the query result, ordered by rank
+     */
+    public synchronized List<SalesQueryEngine.Row> query(SalesQuery query) {
+        return this.queryEngine.execute(query);
+    }
+
+    /**
+     * finds the approximate top n barcodes by sales volume from the top sellers sketch,
+     * which is fed by all imports and merges of purchases in fixed memory, next to the exact purchases list.
+     * Every volume is overestimated by at most getTopSellers().getMaxError().
+     *
+     * @param n the maximum number of top sellers to be found
+     * @return at most n estimates of the heaviest barcodes, ordered by decreasing volume
+     */
+    public synchronized List<SpaceSavingSketch.HeavyHitter> findApproximateTops(int n) {
+        return this.topSellers.topK(n);
+    }
+
     public static Double totalVolume(List<Purchase> purchases) {
         double volume = 0;
         for (Purchase purchase : purchases) {
@@ -101,21 +938,43 @@ public class PurchaseTracker {
     }
 
     public Double totalRevenue(List<Purchase> purchases) {
-        double revenue = 0;
+        return Money.fromCents(totalRevenueCents(purchases));
+    }
+
+    /**
+     * @param purchases
+     * @return the exact total revenue of the purchases in cents
+     */
+    public static long totalRevenueCents(List<Purchase> purchases) {
+        long revenueCents = 0;
         for (Purchase purchase : purchases) {
-            revenue += (purchase.getCount() * purchase.getProduct().getPrice());
+            revenueCents += purchase.getRevenueCents();
         }
-        return revenue;
+        return revenueCents;
+    }
+
+    /**
+     * @return the total volume of all purchases, as maintained by the purchases list
+     */
+    public synchronized long getTotalVolume() {
+        return this.purchases.getAggregate(VOLUME);
+    }
+
+    /**
+     * @return the exact total revenue of all purchases in cents, as maintained by the purchases list
+     */
+    public synchronized long getTotalRevenueCents() {
+        return this.purchases.getAggregate(REVENUE_CENTS);
     }
 
     /**
      * shows total volume and total revenue sales statistics
      */
-    public void showTotals() {
-        System.out.printf("Total volume of all purchases: %.0f\n",
-                this.totalVolume(this.getPurchases()));
-        System.out.printf("Total revenue from all purchases: %.2f\n",
-                this.totalRevenue(this.getPurchases()));
+    public synchronized void showTotals() {
+        System.out.printf("Total volume of all purchases: %d\n",
+                this.getTotalVolume());
+        System.out.printf("Total revenue from all purchases: %s\n",
+                Money.format(this.getTotalRevenueCents()));
     }
 
     /**
@@ -139,29 +998,169 @@ public class PurchaseTracker {
     }
 
     /**
-     * imports another batch of raw purchase data from the filePath text file
-     * and merges the purchase amounts with the earlier imported and accumulated collection in this.purchases
+     * imports another batch of raw purchase data from a text file of the vault
+     * and merges the purchase amounts with the earlier imported and accumulated collection in the target list
      *
-     * @param filePath
+     * @param target the list of accumulated purchases
+     * @param vault
+     * @param file   a purchase file of the vault, of which the path encodes the date, city and branch
      */
-    private void mergePurchasesFromFile(String filePath) {
-        OrderedList<Purchase> newPurchases = new OrderedArrayList<>(this.purchases.getOrdening());
-        this.purchases.sort();
+    private void mergePurchasesFromFile(OrderedList<Purchase> target, Vault vault, Path file) {
+        VaultLocation location = vault.locationOf(file);
+        ImportStatistics.FileStatistics fileStatistics = new ImportStatistics.FileStatistics(file.toString(), location);
+        List<Purchase> newPurchases = this.readPurchasesFromFile(vault, file, fileStatistics);
+
+        this.mergePurchases(target, newPurchases, location, fileStatistics);
+    }
+
+    /**
+     * @param vault
+     * @param file           a purchase file of the vault
+     * @param fileStatistics the statistics of the file, which count its lines, failures and bytes
+     * @return the purchases of all lines of the file, with null entries for lines that could not be converted
+     */
+    private List<Purchase> readPurchasesFromFile(Vault vault, Path file, ImportStatistics.FileStatistics fileStatistics) {
+        List<Purchase> newPurchases = new ArrayList<>();
+        LongFunction<Product> productLookup = this.productLookup(fileStatistics);
+
+        vault.forEachLine(file, line -> {
+            fileStatistics.countLine();
+            newPurchases.add(Purchase.fromLine(line, productLookup, fileStatistics::countFailure));
+        });
+        fileStatistics.countBytes(vault.sizeOf(file));
+        return newPurchases;
+    }
+
+    /**
+     * imports another batch of raw purchase data from a compressed text file, while it is being decompressed,
+     * and merges the purchase amounts with the earlier imported and accumulated collection in the target list
+     *
+     * @param target   the list of accumulated purchases
+     * @param file     the compressed file, which is being decompressed by a DecompressionPipeline
+     * @param numBytes the compressed size of the file
+     * @param location the date, city and branch of the purchases in the file
+     */
+    private void mergePurchasesFromCompressedFile(OrderedList<Purchase> target,
+                                                  DecompressionPipeline.DecompressedFile file, long numBytes,
+                                                  VaultLocation location) {
+        ImportStatistics.FileStatistics fileStatistics =
+                new ImportStatistics.FileStatistics(file.getPath().toString(), location);
+        List<Purchase> newPurchases = new ArrayList<>();
+        LongFunction<Product> productLookup = this.productLookup(fileStatistics);
+
+        file.forEachLine(line -> {
+            fileStatistics.countLine();
+            newPurchases.add(Purchase.fromLine(line, productLookup, fileStatistics::countFailure));
+        });
+        fileStatistics.countBytes(numBytes);
+
+        this.mergePurchases(target, newPurchases, location, fileStatistics);
+    }
+
+    /**
+     * merges the purchases of all complete lines that have been written to the text file beyond the given byte offset
+     * into the accumulated collection in this.purchases.
+     * A last line without a line terminator may still be in the process of being written and is left for a next merge.
+     *
+     * @param vault    the vault of the source text file
+     * @param filePath the file path of the source text file
+     * @param offset   the byte offset in the file up to which all lines have been merged already
+     * @param location the date, city and branch of the purchases in the file
+     * @return the byte offset in the file up to which all lines have been merged now
+     */
+    long mergePurchasesFromFile(Vault vault, Path filePath, long offset, VaultLocation location) {
+        ImportStatistics.FileStatistics fileStatistics = new ImportStatistics.FileStatistics(filePath.toString(), location);
+        List<Purchase> newPurchases = new ArrayList<>();
+        LongFunction<Product> productLookup = this.productLookup(fileStatistics);
+
+        long newOffset = vault.forEachLine(filePath, offset, line -> {
+            fileStatistics.countLine();
+            newPurchases.add(Purchase.fromLine(line, productLookup, fileStatistics::countFailure));
+        });
+        fileStatistics.countBytes(newOffset - offset);
+
+        this.mergePurchases(this.purchases, newPurchases, location, fileStatistics);
+        return newOffset;
+    }
+
+    /**
+     * merges a batch of new purchases with the earlier imported and accumulated collection in the target list
+     * and adds them to the sales cube
+     *
+     * @param target       the list of accumulated purchases, which may be shared with other merging threads
+     * @param newPurchases the new purchases, which may include null entries from corrupt text lines
+     * @param location     the date, city and branch of the new purchases
+     * @param fileStatistics the metrics of the file of the new purchases, which are completed by the merge
+     */
+    private void mergePurchases(OrderedList<Purchase> target, List<Purchase> newPurchases, VaultLocation location,
+                                ImportStatistics.FileStatistics fileStatistics) {
+        long numPurchases = this.addToSalesStatistics(newPurchases, location);
+
+        long mergeStart = System.nanoTime();
+        target.mergeAll(newPurchases, this::add);
+        fileStatistics.countMerge(numPurchases, System.nanoTime() - mergeStart);
 
-        importItemsFromFile(newPurchases, filePath,
-                item -> Purchase.fromLine(item, this.products)
-        );
+        fileStatistics.finish();
+        this.importStatistics.add(fileStatistics);
+    }
 
-        for (Purchase purchase : newPurchases) {
-            if (Objects.isNull(purchase)) {
-                continue;
+    /**
+     * adds a batch of new purchases to the sales cube, the top sellers sketch and the time series
+     *
+     * @param newPurchases the new purchases, which may include null entries from corrupt text lines
+     * @param location     the date, city and branch of the new purchases
+     * @return the number of purchases in the batch
+     */
+    private long addToSalesStatistics(List<Purchase> newPurchases, VaultLocation location) {
+        // the cube takes the counts before the merges may accumulate other purchases into these instances
+        long numPurchases = 0;
+        long epochDay = SalesTimeSeries.epochDayOf(location.getDate());
+        synchronized (this.salesCube) {
+            for (Purchase purchase : newPurchases) {
+                if (Objects.nonNull(purchase)) {
+                    this.salesCube.add(location, purchase);
+                    this.topSellers.add(purchase.getBarcode(), purchase.getCount());
+                    if (epochDay != Long.MIN_VALUE) {
+                        this.salesTimeSeries.add(purchase.getBarcode(), epochDay, purchase.getCount());
+                    }
+                    numPurchases++;
+                }
             }
-            this.purchases.merge(purchase, this::add);
         }
+        return numPurchases;
+    }
+
+    /**
+     * finds a product in the catalog by its barcode
+     *
+     * @param barcode
+     * @return the product, or null if the barcode is unknown
+     */
+    private Product findProduct(long barcode) {
+        return this.catalog.get().findProduct(barcode);
+    }
+
+    /**
+     * provides the product lookup of the purchases of a file, which rejects barcodes by the catalog filter first
+     * and only searches the catalog for barcodes that pass the filter.
+     * All purchases of the file are looked up in the catalog version that is current when the lookup is provided.
+     *
+     * @param fileStatistics the metrics of the file, which count the rejected barcodes
+     * @return a function that finds the product of a barcode, or returns null for an unknown barcode
+     */
+    private LongFunction<Product> productLookup(ImportStatistics.FileStatistics fileStatistics) {
+        ProductCatalog fileCatalog = this.catalog.get();
+        return barcode -> {
+            if (!fileCatalog.mightContain(barcode)) {
+                fileStatistics.countFilterReject();
+                return null;
+            }
+            return fileCatalog.findProduct(barcode);
+        };
     }
 
     public Purchase add(Purchase p1, Purchase p2) {
-        p1.addCount(p2.getCount());
+        p1.addPurchase(p2);
         return p1;
     }
 
@@ -179,11 +1178,44 @@ public class PurchaseTracker {
         }
     }
 
+    /**
+     * @return the products of the current catalog version, ordered by barcode
+     */
     public List<Product> getProducts() {
-        return products;
+        return this.catalog.get().getProducts();
+    }
+
+    public ProductCatalog getCatalog() {
+        return this.catalog.get();
     }
 
     public List<Purchase> getPurchases() {
         return purchases;
     }
+
+    /**
+     * @return the sales cube, whose queries synchronize with the merges of a vault watcher on their own
+     */
+    public synchronized SalesCube getSalesCube() {
+        return salesCube;
+    }
+
+    public SpaceSavingSketch getTopSellers() {
+        return topSellers;
+    }
+
+    /**
+     * @return the time series, whose queries synchronize with the merges of a vault watcher on their own
+     */
+    public synchronized SalesTimeSeries getSalesTimeSeries() {
+        return salesTimeSeries;
+    }
+
+    public SalesQueryEngine getQueryEngine() {
+        return queryEngine;
+    }
+
+    public ImportStatistics getImportStatistics() {
+        return importStatistics;
+    }
 }
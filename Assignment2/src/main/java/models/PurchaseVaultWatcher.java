@@ -0,0 +1,206 @@
+package models;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * watches the directory tree of a purchases vault for new or appended purchase files
+ * and merges only the newly written lines into the accumulated purchases of a PurchaseTracker.
+ * For every purchase file the watcher tracks the byte offset up to which lines have been merged already,
+ * and the import statistics of the tracker keep a single entry per file with the metrics of all its merges.
+ * Merges synchronize on the tracker, like the totals and tops queries of the tracker do,
+ * such that those queries see consistent totals while the watcher runs on its own thread.
+ */
+public class PurchaseVaultWatcher implements Runnable, Closeable {
+    private final PurchaseTracker tracker;
+    private final Vault vault;
+    private final Path vaultRoot;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final Map<Path, Long> fileOffsets = new HashMap<>();    // the number of bytes merged so far per file
+
+    public PurchaseVaultWatcher(PurchaseTracker tracker, Path vaultRoot) throws IOException {
+        this(tracker, Vault.open(vaultRoot));
+    }
+
+    /**
+     * @param tracker
+     * @param vault   the vault to watch, which is closed by the watcher
+     * @throws IOException
+     * @throws IllegalArgumentException if the vault is not a directory of the default file system,
+     *                                  e.g. a resource inside a jar, which cannot be watched for changes
+     */
+    public PurchaseVaultWatcher(PurchaseTracker tracker, Vault vault) throws IOException {
+        this.tracker = tracker;
+        this.vault = vault;
+        this.vaultRoot = vault.getRoot();
+        if (this.vaultRoot.getFileSystem() != FileSystems.getDefault()) {
+            vault.close();
+            throw new IllegalArgumentException("Cannot watch vault " + vault
+                    + ", only vaults in directories of the default file system can be watched");
+        }
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            this.registerDirectories(this.vaultRoot);
+        } catch (IOException e) {
+            try {
+                this.watchService.close();
+            } finally {
+                vault.close();
+            }
+            throw e;
+        }
+    }
+
+    public Path getVaultRoot() {
+        return vaultRoot;
+    }
+
+    /**
+     * merges all lines that have been appended to any purchase file in the vault since the latest merge
+     * without waiting for change notifications
+     *
+     * @return the number of files from which new lines have been merged
+     * @throws IOException
+     */
+    public int catchUp() throws IOException {
+        return this.mergeDirectory(this.vaultRoot);
+    }
+
+    /**
+     * waits for change notifications of the vault and merges the new lines of all files that have been changed
+     *
+     * @param timeout the maximum time to wait for a first notification
+     * @param unit    the unit of the timeout
+     * @return the number of files from which new lines have been merged
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public int pollChanges(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        int numChangedFiles = 0;
+        WatchKey key = this.watchService.poll(timeout, unit);
+
+        while (key != null) {
+            Path directory = this.watchedDirectories.get(key);
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                    // notifications have been lost, so check all files of the vault
+                    numChangedFiles += this.catchUp();
+                    continue;
+                }
+
+                Path changedPath = directory.resolve((Path) event.context());
+                if (Files.isDirectory(changedPath)) {
+                    // a new directory may already contain files before its registration has completed
+                    this.registerDirectories(changedPath);
+                    numChangedFiles += this.mergeDirectory(changedPath);
+                } else if (this.mergeFile(changedPath)) {
+                    numChangedFiles++;
+                }
+            }
+
+            if (!key.reset()) {
+                this.watchedDirectories.remove(key);
+            }
+            key = this.watchService.poll();
+        }
+
+        return numChangedFiles;
+    }
+
+    /**
+     * keeps merging changes of the vault until the watcher is closed or the thread is interrupted
+     */
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                this.pollChanges(1, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher has been stopped
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot merge changes from purchases vault " + this.vaultRoot, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.watchService.close();
+        } finally {
+            this.vault.close();
+        }
+    }
+
+    private void registerDirectories(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                WatchKey key = directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private int mergeDirectory(Path root) throws IOException {
+        int[] numChangedFiles = {0};
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                if (mergeFile(file)) numChangedFiles[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return numChangedFiles[0];
+    }
+
+    /**
+     * merges the lines that have been appended to a purchase file since the latest merge
+     *
+     * @param file
+     * @return whether new lines have been merged
+     * @throws IOException
+     */
+    private boolean mergeFile(Path file) throws IOException {
+        if (!file.getFileName().toString().matches(PurchaseTracker.PURCHASE_FILE_PATTERN) || !Files.isRegularFile(file)) {
+            return false;
+        }
+
+        long offset = this.fileOffsets.getOrDefault(file, 0L);
+        long size = Files.size(file);
+        if (size < offset) {
+            // the file has been truncated, earlier merged lines cannot be withdrawn, so continue from its new end
+            this.fileOffsets.put(file, size);
+            return false;
+        } else if (size == offset) {
+            return false;
+        }
+
+        long newOffset;
+        synchronized (this.tracker) {
+            newOffset = this.tracker.mergePurchasesFromFile(this.vault, file, offset,
+                    VaultLocation.fromVaultPath(this.vaultRoot.relativize(file)));
+        }
+        this.fileOffsets.put(file, newOffset);
+        return newOffset > offset;
+    }
+}
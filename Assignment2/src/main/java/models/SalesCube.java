@@ -0,0 +1,223 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * a compact data cube of sales volumes and revenues indexed by (date, city, branch, product).
+ * Every cell of the cube is identified by a single long key, which packs the dictionary index of each dimension.
+ * Besides the base cells, all rollups across any combination of dimensions are maintained while purchases are added,
+ * such that every query on any combination of date, city, branch and product is answered by a single lookup.
+ * All methods synchronize on the cube, so queries may run while a vault watcher adds purchases.
+ */
+public class SalesCube {
+    public enum Dimension { DATE, CITY, BRANCH, PRODUCT }
+
+    // the number of bits of each dimension in a packed cell key, in order date, city, branch, product
+    private static final int DATE_BITS = 12, CITY_BITS = 12, BRANCH_BITS = 16, PRODUCT_BITS = 24;
+    private static final int[] BITS = {DATE_BITS, CITY_BITS, BRANCH_BITS, PRODUCT_BITS};
+    private static final int[] SHIFTS = {CITY_BITS + BRANCH_BITS + PRODUCT_BITS, BRANCH_BITS + PRODUCT_BITS, PRODUCT_BITS, 0};
+    private static final int NUM_DIMENSIONS = 4;
+
+    private final List<String> dates = new ArrayList<>();
+    private final List<String> cities = new ArrayList<>();
+    private final List<String> branches = new ArrayList<>();
+    private final List<Product> products = new ArrayList<>();
+    private final Map<String, Integer> dateIndex = new HashMap<>();
+    private final Map<String, Integer> cityIndex = new HashMap<>();
+    private final Map<String, Integer> branchIndex = new HashMap<>();
+    private final LongKeyIndex productIndex = new LongKeyIndex(1024);
+
+    private final LongKeyIndex cells = new LongKeyIndex(4096);
+    private long[] volumes = new long[4096];            // the sales volume by cell slot
+    private long[] revenueCents = new long[4096];       // the sales revenue in cents by cell slot
+
+    /**
+     * adds the purchase of a branch into all cells of the cube that cover its location and product
+     *
+     * @param location
+     * @param purchase
+     */
+    public synchronized void add(VaultLocation location, Purchase purchase) {
+        int[] coordinates = {
+                indexOf(location.getDate(), dates, dateIndex, DATE_BITS),
+                indexOf(location.getCity(), cities, cityIndex, CITY_BITS),
+                indexOf(location.getBranch(), branches, branchIndex, BRANCH_BITS),
+                indexOf(purchase.getProduct())
+        };
+        long revenue = purchase.getRevenueCents();
+
+        // each bit of the mask selects a dimension that is rolled up into the 'all' value of that dimension
+        for (int mask = 0; mask < (1 << NUM_DIMENSIONS); mask++) {
+            int slot = cells.addOrGetSlot(cellKey(coordinates, mask));
+            if (slot == volumes.length) {
+                volumes = Arrays.copyOf(volumes, slot * 2);
+                revenueCents = Arrays.copyOf(revenueCents, slot * 2);
+            }
+            volumes[slot] += purchase.getCount();
+            revenueCents[slot] += revenue;
+        }
+    }
+
+    public synchronized void clear() {
+        dates.clear();
+        cities.clear();
+        branches.clear();
+        products.clear();
+        dateIndex.clear();
+        cityIndex.clear();
+        branchIndex.clear();
+        productIndex.clear();
+        cells.clear();
+        Arrays.fill(volumes, 0);
+        Arrays.fill(revenueCents, 0);
+    }
+
+    /**
+     * calculates the sales volume of the cells that match the given selection
+     * A null value of any selection parameter selects all values of that dimension
+     *
+     * @param date    the yyyyMMdd date, or null
+     * @param city    the city, or null
+     * @param branch  the branch, or null
+     * @param barcode the barcode of the product, or null
+     * @return the total volume of the selected sales
+     */
+    public synchronized long volume(String date, String city, String branch, Long barcode) {
+        int slot = slotOf(date, city, branch, barcode);
+        return slot < 0 ? 0 : volumes[slot];
+    }
+
+    /**
+     * calculates the sales revenue of the cells that match the given selection
+     * A null value of any selection parameter selects all values of that dimension
+     *
+     * @param date    the yyyyMMdd date, or null
+     * @param city    the city, or null
+     * @param branch  the branch, or null
+     * @param barcode the barcode of the product, or null
+     * @return the total revenue in cents of the selected sales
+     */
+    public synchronized long revenueCents(String date, String city, String branch, Long barcode) {
+        int slot = slotOf(date, city, branch, barcode);
+        return slot < 0 ? 0 : revenueCents[slot];
+    }
+
+    /**
+     * groups the revenue of the selected sales by the values of one dimension
+     * e.g. revenuePer(Dimension.CITY, "20211002", null, null, null) yields the revenue per city on 20211002
+     *
+     * @param groupBy the date, city or branch dimension whose values define the groups
+     * @return the revenue in cents per value of the groupBy dimension, for all values with sales in the selection
+     */
+    public synchronized Map<String, Long> revenuePer(Dimension groupBy, String date, String city, String branch,
+                                                     Long barcode) {
+        List<String> values;
+        if (groupBy == Dimension.DATE) values = dates;
+        else if (groupBy == Dimension.CITY) values = cities;
+        else if (groupBy == Dimension.BRANCH) values = branches;
+        else throw new IllegalArgumentException("Use topProducts to group by product");
+
+        Map<String, Long> revenues = new LinkedHashMap<>();
+        for (String value : values) {
+            int slot = slotOf(groupBy == Dimension.DATE ? value : date,
+                    groupBy == Dimension.CITY ? value : city,
+                    groupBy == Dimension.BRANCH ? value : branch,
+                    barcode);
+            if (slot >= 0) revenues.put(value, revenueCents[slot]);
+        }
+        return revenues;
+    }
+
+    /**
+     * finds the top n products of the selected sales, e.g. topProducts(5, ranker, null, null, "webshop")
+     *
+     * @param n      the maximum number of products to be found
+     * @param ranker the comparator used to rank the aggregated purchases of the products
+     * @return a list of at most n new purchases, which hold the selected volume and revenue per product,
+     * ordered by ranker
+     */
+    public synchronized List<Purchase> topProducts(int n, Comparator<Purchase> ranker,
+                                                   String date, String city, String branch) {
+        List<Purchase> selection = new ArrayList<>();
+        for (Product product : products) {
+            int slot = slotOf(date, city, branch, product.getBarcode());
+            if (slot >= 0) selection.add(new Purchase(product, volumes[slot], revenueCents[slot]));
+        }
+        return PurchaseTracker.selectTops(selection, n, ranker);
+    }
+
+    public synchronized List<String> getDates() {
+        return List.copyOf(dates);
+    }
+
+    public synchronized List<String> getCities() {
+        return List.copyOf(cities);
+    }
+
+    public synchronized List<String> getBranches() {
+        return List.copyOf(branches);
+    }
+
+    private int slotOf(String date, String city, String branch, Long barcode) {
+        int[] coordinates = new int[NUM_DIMENSIONS];
+        int mask = 0;
+        Object[] selection = {date, city, branch, barcode};
+        for (int dimension = 0; dimension < NUM_DIMENSIONS; dimension++) {
+            if (selection[dimension] == null) {
+                mask |= 1 << dimension;
+                continue;
+            }
+            Integer index;
+            if (dimension == 0) index = dateIndex.get(date);
+            else if (dimension == 1) index = cityIndex.get(city);
+            else if (dimension == 2) index = branchIndex.get(branch);
+            else {
+                int productSlot = productIndex.slotOf(barcode);
+                index = productSlot < 0 ? null : productSlot;
+            }
+            if (index == null) return -1;
+            coordinates[dimension] = index;
+        }
+        return cells.slotOf(cellKey(coordinates, mask));
+    }
+
+    private static long cellKey(int[] coordinates, int rollupMask) {
+        long key = 0;
+        for (int dimension = 0; dimension < NUM_DIMENSIONS; dimension++) {
+            // the all-ones value of a dimension represents the rollup across all its values
+            long value = (rollupMask & (1 << dimension)) != 0 ? (1L << BITS[dimension]) - 1 : coordinates[dimension];
+            key |= value << SHIFTS[dimension];
+        }
+        return key;
+    }
+
+    private static int indexOf(String value, List<String> values, Map<String, Integer> valueIndex, int bits) {
+        Integer index = valueIndex.get(value);
+        if (index == null) {
+            index = values.size();
+            if (index >= (1 << bits) - 1) {
+                throw new IllegalStateException("Sales cube cannot hold more than " + index + " distinct values like " + value);
+            }
+            values.add(value);
+            valueIndex.put(value, index);
+        }
+        return index;
+    }
+
+    private int indexOf(Product product) {
+        int index = productIndex.addOrGetSlot(product.getBarcode());
+        if (index == products.size()) {
+            if (index >= (1 << PRODUCT_BITS) - 1) {
+                throw new IllegalStateException("Sales cube cannot hold more than " + index + " distinct products");
+            }
+            products.add(product);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,167 @@
+package models;
+
+import java.util.Objects;
+
+/**
+ * an immutable ad hoc query of sales statistics over the aggregated purchases:
+ * which purchases to include, how to group them, by which measure to rank the groups and how many to return.
+ * Queries are value objects, so equal queries can share a cached result. They are created by a Builder:
+ * <pre>
+ *     SalesQuery.builder().titlePrefix("Calvé").groupBy(Grouping.BRAND).rankBy(Measure.REVENUE).limit(5).build()
+ * </pre>
+ */
+public final class SalesQuery {
+    /**
+     * the groups of purchases that make up the rows of the result
+     */
+    public enum Grouping {
+        PRODUCT,    // one row per product
+        BRAND,      // one row per first word of the product titles
+        ALL         // one row with the totals of all included purchases
+    }
+
+    /**
+     * the measures by which rows can be ranked
+     */
+    public enum Measure {
+        VOLUME,
+        REVENUE
+    }
+
+    private final long fromBarcode, toBarcode;
+    private final String titlePrefix;
+    private final Grouping grouping;
+    private final Measure rankMeasure;
+    private final boolean highestFirst;
+    private final int limit;
+
+    private SalesQuery(Builder builder) {
+        this.fromBarcode = builder.fromBarcode;
+        this.toBarcode = builder.toBarcode;
+        this.titlePrefix = builder.titlePrefix;
+        this.grouping = builder.grouping;
+        this.rankMeasure = builder.rankMeasure;
+        this.highestFirst = builder.highestFirst;
+        this.limit = builder.limit;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private long fromBarcode = Long.MIN_VALUE, toBarcode = Long.MAX_VALUE;
+        private String titlePrefix = "";
+        private Grouping grouping = Grouping.PRODUCT;
+        private Measure rankMeasure = Measure.VOLUME;
+        private boolean highestFirst = true;
+        private int limit = Integer.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        /**
+         * includes only the purchases of products with barcodes from fromBarcode up to and including toBarcode
+         */
+        public Builder barcodeRange(long fromBarcode, long toBarcode) {
+            this.fromBarcode = fromBarcode;
+            this.toBarcode = toBarcode;
+            return this;
+        }
+
+        /**
+         * includes only the purchases of products of which the title starts with the prefix
+         */
+        public Builder titlePrefix(String titlePrefix) {
+            this.titlePrefix = Objects.requireNonNull(titlePrefix);
+            return this;
+        }
+
+        public Builder groupBy(Grouping grouping) {
+            this.grouping = Objects.requireNonNull(grouping);
+            return this;
+        }
+
+        /**
+         * ranks the rows by the measure, with the highest values first
+         */
+        public Builder rankBy(Measure rankMeasure) {
+            return this.rankBy(rankMeasure, true);
+        }
+
+        public Builder rankBy(Measure rankMeasure, boolean highestFirst) {
+            this.rankMeasure = Objects.requireNonNull(rankMeasure);
+            this.highestFirst = highestFirst;
+            return this;
+        }
+
+        public Builder limit(int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("The limit of a query cannot be negative: " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public SalesQuery build() {
+            if (this.fromBarcode > this.toBarcode) {
+                throw new IllegalArgumentException("Empty barcode range " + this.fromBarcode + " - " + this.toBarcode);
+            }
+            return new SalesQuery(this);
+        }
+    }
+
+    public long getFromBarcode() {
+        return fromBarcode;
+    }
+
+    public long getToBarcode() {
+        return toBarcode;
+    }
+
+    public String getTitlePrefix() {
+        return titlePrefix;
+    }
+
+    public Grouping getGrouping() {
+        return grouping;
+    }
+
+    public Measure getRankMeasure() {
+        return rankMeasure;
+    }
+
+    public boolean isHighestFirst() {
+        return highestFirst;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof SalesQuery)) {
+            return false;
+        }
+        SalesQuery query = (SalesQuery) other;
+        return fromBarcode == query.fromBarcode && toBarcode == query.toBarcode
+                && titlePrefix.equals(query.titlePrefix) && grouping == query.grouping
+                && rankMeasure == query.rankMeasure && highestFirst == query.highestFirst && limit == query.limit;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fromBarcode, toBarcode, titlePrefix, grouping, rankMeasure, highestFirst, limit);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("barcodes %d - %d, title '%s*', by %s, ranked by %s %s, limit %d",
+                fromBarcode, toBarcode, titlePrefix, grouping, rankMeasure,
+                highestFirst ? "descending" : "ascending", limit);
+    }
+}
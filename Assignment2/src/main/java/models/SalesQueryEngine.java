@@ -0,0 +1,184 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * executes SalesQuery instances over an ordered list of aggregated purchases.
+ * Every query takes a single pass across the purchases, which filters and groups them at once,
+ * and then selects the top rows by the precomputed keys of the rank measure.
+ * If the purchases are an OrderedArrayList, the pass seeks to the lower bound of the barcode range by a binary search
+ * and stops after the upper bound in the sorted section; only the unsorted section is scanned in full.
+ * Results are kept in a least recently used cache, which is discarded as soon as the version of the purchases list
+ * shows that purchases have been added, merged or removed since the results were computed.
+ */
+public class SalesQueryEngine {
+    private final OrderedList<Purchase> purchases;
+    private final Map<SalesQuery, List<Row>> cache;
+    private long cachedVersion;
+    private long numCacheHits, numCacheMisses;
+
+    /**
+     * one row of the result of a query: the totals of a group of purchases
+     */
+    public static class Row {
+        private final String group;
+        private long volume;
+        private long revenueCents;
+        private int numProducts;
+
+        Row(String group) {
+            this.group = group;
+        }
+
+        private void add(Purchase purchase) {
+            this.volume += purchase.getCount();
+            this.revenueCents += purchase.getRevenueCents();
+            this.numProducts++;
+        }
+
+        /**
+         * @return the label of the group, e.g. the barcode and title of a product or the brand
+         */
+        public String getGroup() {
+            return group;
+        }
+
+        public long getVolume() {
+            return volume;
+        }
+
+        public long getRevenueCents() {
+            return revenueCents;
+        }
+
+        public int getNumProducts() {
+            return numProducts;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(64)
+                    .append(group).append('/')
+                    .append(numProducts).append('/')
+                    .append(volume).append('/');
+            return Money.appendCents(text, revenueCents).toString();
+        }
+    }
+
+    /**
+     * @param purchases the aggregated purchases, ordered by barcode
+     * @param cacheSize the maximum number of query results in the cache
+     */
+    public SalesQueryEngine(OrderedList<Purchase> purchases, int cacheSize) {
+        this.purchases = purchases;
+        this.cachedVersion = purchases.getVersion();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SalesQuery, List<Row>> eldest) {
+                return this.size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @param query
+     * @return the rows of the query result, ordered by rank, which shall not be modified
+     */
+    public synchronized List<Row> execute(SalesQuery query) {
+        long version = this.purchases.getVersion();
+        if (version != this.cachedVersion) {
+            this.cache.clear();
+            this.cachedVersion = version;
+        }
+
+        List<Row> rows = this.cache.get(query);
+        if (rows != null) {
+            this.numCacheHits++;
+            return rows;
+        }
+        this.numCacheMisses++;
+        rows = Collections.unmodifiableList(this.compute(query));
+        this.cache.put(query, rows);
+        return rows;
+    }
+
+    public synchronized long getNumCacheHits() {
+        return numCacheHits;
+    }
+
+    public synchronized long getNumCacheMisses() {
+        return numCacheMisses;
+    }
+
+    private List<Row> compute(SalesQuery query) {
+        List<Row> rows = new ArrayList<>();
+        Map<String, Row> groups = new HashMap<>();
+
+        if (this.purchases instanceof OrderedArrayList) {
+            OrderedArrayList<Purchase> orderedPurchases = (OrderedArrayList<Purchase>) this.purchases;
+            int numSorted = orderedPurchases.getNumSorted();
+            Purchase lowerBound = new Purchase(new Product(query.getFromBarcode()), 0);
+            for (int index = orderedPurchases.indexOfFirstNotSmaller(lowerBound); index < numSorted; index++) {
+                Purchase purchase = orderedPurchases.get(index);
+                if (purchase != null && purchase.getBarcode() > query.getToBarcode()) break;
+                collect(purchase, query, rows, groups);
+            }
+            for (int index = numSorted; index < orderedPurchases.size(); index++) {
+                collect(orderedPurchases.get(index), query, rows, groups);
+            }
+        } else {
+            for (Purchase purchase : this.purchases) {
+                collect(purchase, query, rows, groups);
+            }
+        }
+        rows.addAll(groups.values());
+
+        ToLongFunction<Row> rankKey = query.getRankMeasure() == SalesQuery.Measure.VOLUME
+                ? Row::getVolume : Row::getRevenueCents;
+        return PurchaseTracker.selectTopsByKey(rows, query.getLimit(), rankKey, query.isHighestFirst());
+    }
+
+    /**
+     * adds the purchase to the row of its group if it passes the filters of the query
+     */
+    private static void collect(Purchase purchase, SalesQuery query, List<Row> rows, Map<String, Row> groups) {
+        if (purchase == null) return;
+        long barcode = purchase.getBarcode();
+        if (barcode < query.getFromBarcode() || barcode > query.getToBarcode()) return;
+        String title = purchase.getProduct().getTitle();
+        String titlePrefix = query.getTitlePrefix();
+        if (!titlePrefix.isEmpty() && (title == null || !title.startsWith(titlePrefix))) return;
+
+        Row row;
+        switch (query.getGrouping()) {
+            case PRODUCT:
+                row = new Row(barcode + "/" + title);
+                rows.add(row);
+                break;
+            case BRAND:
+                row = groups.computeIfAbsent(brandOf(title), Row::new);
+                break;
+            default:
+                row = groups.computeIfAbsent("all", Row::new);
+                break;
+        }
+        row.add(purchase);
+    }
+
+    /**
+     * @param title
+     * @return the first word of the title, which is the brand of most products
+     */
+    static String brandOf(String title) {
+        if (title == null || title.isBlank()) return "";
+        String stripped = title.strip();
+        int end = stripped.indexOf(' ');
+        return end < 0 ? stripped : stripped.substring(0, end);
+    }
+}
@@ -0,0 +1,282 @@
+package models;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * the daily sales volumes of every barcode, which are collected from the date folders of the vault during import.
+ * The series of a barcode keeps its most recent days uncompressed in a small tail, which grows with its number of days
+ * from INITIAL_TAIL_DAYS up to BLOCK_DAYS, as most barcodes are sold on a few days only. Full tails are sealed into
+ * blocks of BLOCK_DAYS days, which encode the gaps between the days and the volumes as variable length integers,
+ * and remember their first and last day and total volume. Range queries add the totals of the blocks that lie within
+ * the range and only decode the blocks at the edges of the range.
+ * Days arrive mostly in ascending order; an older day is merged into the block that covers it by re-encoding that block.
+ */
+public class SalesTimeSeries {
+    public static final int BLOCK_DAYS = 64;
+    private static final int INITIAL_TAIL_DAYS = 4;
+
+    private final LongKeyIndex barcodes = new LongKeyIndex(1024);
+    private final List<Series> series = new ArrayList<>();      // the series by slot of the barcode
+
+    /**
+     * a sealed block of consecutive entries of a series
+     */
+    private static class Block {
+        final long firstDay, lastDay;
+        final long totalVolume;
+        final int numDays;
+        final byte[] encoded;      // per day: varint gap to the previous day, zigzag varint volume
+
+        Block(long[] days, long[] volumes, int numDays) {
+            this.firstDay = days[0];
+            this.lastDay = days[numDays - 1];
+            this.numDays = numDays;
+
+            byte[] buffer = new byte[numDays * 2 * 10];
+            int length = 0;
+            long previousDay = this.firstDay;
+            long total = 0;
+            for (int index = 0; index < numDays; index++) {
+                length = writeVarLong(buffer, length, days[index] - previousDay);
+                length = writeVarLong(buffer, length, (volumes[index] << 1) ^ (volumes[index] >> 63));
+                previousDay = days[index];
+                total += volumes[index];
+            }
+            this.encoded = Arrays.copyOf(buffer, length);
+            this.totalVolume = total;
+        }
+
+        /**
+         * decodes the days and volumes of the block into the given arrays, which have room for numDays entries
+         */
+        void decode(long[] days, long[] volumes) {
+            int[] position = {0};
+            long day = this.firstDay;
+            for (int index = 0; index < this.numDays; index++) {
+                day += readVarLong(this.encoded, position);
+                long zigzag = readVarLong(this.encoded, position);
+                days[index] = day;
+                volumes[index] = (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+    }
+
+    /**
+     * the daily volumes of one barcode
+     */
+    private static class Series {
+        final List<Block> blocks = new ArrayList<>();
+        long[] tailDays = new long[INITIAL_TAIL_DAYS];
+        long[] tailVolumes = new long[INITIAL_TAIL_DAYS];
+        int tailSize;
+
+        void add(long day, long volume) {
+            if (this.tailSize > 0 && day == this.tailDays[this.tailSize - 1]) {
+                this.tailVolumes[this.tailSize - 1] += volume;
+                return;
+            }
+            if (!this.blocks.isEmpty() && day <= this.blocks.get(this.blocks.size() - 1).lastDay) {
+                this.addToBlock(day, volume);
+                return;
+            }
+
+            int index = this.tailSize;
+            if (index > 0 && day < this.tailDays[index - 1]) {
+                index = Arrays.binarySearch(this.tailDays, 0, this.tailSize, day);
+                if (index >= 0) {
+                    this.tailVolumes[index] += volume;
+                    return;
+                }
+                index = -index - 1;
+            }
+            if (this.tailSize == BLOCK_DAYS) {
+                this.sealTail();
+                if (index == BLOCK_DAYS) {
+                    index = 0;
+                } else {
+                    // the day precedes days of the sealed block, so merge it there
+                    this.addToBlock(day, volume);
+                    return;
+                }
+            }
+            if (this.tailSize == this.tailDays.length) {
+                int capacity = Math.min(BLOCK_DAYS, 2 * this.tailSize);
+                this.tailDays = Arrays.copyOf(this.tailDays, capacity);
+                this.tailVolumes = Arrays.copyOf(this.tailVolumes, capacity);
+            }
+            System.arraycopy(this.tailDays, index, this.tailDays, index + 1, this.tailSize - index);
+            System.arraycopy(this.tailVolumes, index, this.tailVolumes, index + 1, this.tailSize - index);
+            this.tailDays[index] = day;
+            this.tailVolumes[index] = volume;
+            this.tailSize++;
+        }
+
+        private void sealTail() {
+            this.blocks.add(new Block(this.tailDays, this.tailVolumes, this.tailSize));
+            this.tailSize = 0;
+        }
+
+        /**
+         * merges an older day into the last block that starts at or before that day, or into the first block
+         */
+        private void addToBlock(long day, long volume) {
+            int blockIndex = 0;
+            while (blockIndex + 1 < this.blocks.size() && this.blocks.get(blockIndex + 1).firstDay <= day) {
+                blockIndex++;
+            }
+            Block block = this.blocks.get(blockIndex);
+            long[] days = new long[block.numDays + 1];
+            long[] volumes = new long[block.numDays + 1];
+            block.decode(days, volumes);
+
+            int index = Arrays.binarySearch(days, 0, block.numDays, day);
+            int numDays = block.numDays;
+            if (index >= 0) {
+                volumes[index] += volume;
+            } else {
+                index = -index - 1;
+                System.arraycopy(days, index, days, index + 1, numDays - index);
+                System.arraycopy(volumes, index, volumes, index + 1, numDays - index);
+                days[index] = day;
+                volumes[index] = volume;
+                numDays++;
+            }
+            this.blocks.set(blockIndex, new Block(days, volumes, numDays));
+        }
+
+        long volume(long fromDay, long toDay) {
+            long volume = 0;
+            long[] days = null, volumes = null;
+            for (Block block : this.blocks) {
+                if (block.lastDay < fromDay || block.firstDay > toDay) continue;
+                if (block.firstDay >= fromDay && block.lastDay <= toDay) {
+                    volume += block.totalVolume;
+                    continue;
+                }
+                if (days == null || days.length < block.numDays) {
+                    days = new long[block.numDays];
+                    volumes = new long[block.numDays];
+                }
+                block.decode(days, volumes);
+                volume += sumWithin(days, volumes, block.numDays, fromDay, toDay);
+            }
+            return volume + sumWithin(this.tailDays, this.tailVolumes, this.tailSize, fromDay, toDay);
+        }
+
+        void addDailyVolumes(long[] dailyVolumes, long fromDay) {
+            long toDay = fromDay + dailyVolumes.length - 1;
+            long[] days = null, volumes = null;
+            for (Block block : this.blocks) {
+                if (block.lastDay < fromDay || block.firstDay > toDay) continue;
+                if (days == null || days.length < block.numDays) {
+                    days = new long[block.numDays];
+                    volumes = new long[block.numDays];
+                }
+                block.decode(days, volumes);
+                addWithin(days, volumes, block.numDays, dailyVolumes, fromDay);
+            }
+            addWithin(this.tailDays, this.tailVolumes, this.tailSize, dailyVolumes, fromDay);
+        }
+
+        private static long sumWithin(long[] days, long[] volumes, int numDays, long fromDay, long toDay) {
+            long volume = 0;
+            for (int index = 0; index < numDays; index++) {
+                if (days[index] >= fromDay && days[index] <= toDay) volume += volumes[index];
+            }
+            return volume;
+        }
+
+        private static void addWithin(long[] days, long[] volumes, int numDays, long[] dailyVolumes, long fromDay) {
+            for (int index = 0; index < numDays; index++) {
+                long offset = days[index] - fromDay;
+                if (offset >= 0 && offset < dailyVolumes.length) dailyVolumes[(int) offset] += volumes[index];
+            }
+        }
+    }
+
+    /**
+     * adds a volume of a barcode on a day
+     *
+     * @param barcode
+     * @param epochDay the number of days since 1970-01-01
+     * @param volume
+     */
+    public synchronized void add(long barcode, long epochDay, long volume) {
+        int slot = this.barcodes.addOrGetSlot(barcode);
+        if (slot == this.series.size()) this.series.add(new Series());
+        this.series.get(slot).add(epochDay, volume);
+    }
+
+    /**
+     * @param barcode
+     * @param from    the first date of the range
+     * @param to      the last date of the range, inclusive
+     * @return the volume of the barcode on all dates within the range
+     */
+    public synchronized long volume(long barcode, LocalDate from, LocalDate to) {
+        int slot = this.barcodes.slotOf(barcode);
+        if (slot < 0) return 0;
+        return this.series.get(slot).volume(from.toEpochDay(), to.toEpochDay());
+    }
+
+    /**
+     * @param barcode
+     * @param from    the first date of the range
+     * @param to      the last date of the range, inclusive
+     * @return the volume of the barcode per date within the range, starting at from
+     */
+    public synchronized long[] dailyVolumes(long barcode, LocalDate from, LocalDate to) {
+        long[] dailyVolumes = new long[Math.toIntExact(Math.max(0, to.toEpochDay() - from.toEpochDay() + 1))];
+        int slot = this.barcodes.slotOf(barcode);
+        if (slot >= 0) this.series.get(slot).addDailyVolumes(dailyVolumes, from.toEpochDay());
+        return dailyVolumes;
+    }
+
+    public synchronized int getNumBarcodes() {
+        return this.barcodes.size();
+    }
+
+    public synchronized void clear() {
+        this.barcodes.clear();
+        this.series.clear();
+    }
+
+    /**
+     * parses the date of a vault location, once per file rather than for each of its purchases.
+     * Purchases of locations without a date are not part of any time series.
+     *
+     * @param date a date in the format of the date folders of the vault, e.g. 20211001
+     * @return the number of days since 1970-01-01, or Long.MIN_VALUE if the text is not a date
+     */
+    static long epochDayOf(String date) {
+        if (date == null || date.isEmpty()) return Long.MIN_VALUE;
+        try {
+            return LocalDate.parse(date, DateTimeFormatter.BASIC_ISO_DATE).toEpochDay();
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static int writeVarLong(byte[] buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
+    }
+
+    private static long readVarLong(byte[] buffer, int[] position) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte next = buffer[position[0]++];
+            value |= (long) (next & 0x7F) << shift;
+            if (next >= 0) return value;
+        }
+    }
+}
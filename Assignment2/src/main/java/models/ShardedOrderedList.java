@@ -0,0 +1,266 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * an ordered list which is partitioned into shards by ranges of a long key, e.g. the barcode of a purchase.
+ * Every shard is an OrderedArrayList that is owned by a single writer thread: other threads never modify a shard,
+ * they route their items to the inbox of the shard, which is a lock-free queue, and the writer merges them.
+ * So threads that add items never block each other, and the shards do not need any locks.
+ * Because the shards hold disjoint ascending ranges of keys, the concatenation of the shards is ordered,
+ * and the shards are combined at query time by iterating them one after the other.
+ *
+ * @param <E> the type of the items
+ */
+public class ShardedOrderedList<E> implements AutoCloseable {
+    private final long[] lowerBounds;           // the smallest key of every shard, ascending
+    private final ToLongFunction<? super E> shardKey;
+    private final List<Shard> shards;
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private volatile boolean closed;
+
+    /**
+     * a batch of items for one shard, with the action that follows its merge
+     */
+    private class Batch {
+        final List<E> items;
+        final Consumer<Long> onMerged;
+
+        Batch(List<E> items, Consumer<Long> onMerged) {
+            this.items = items;
+            this.onMerged = onMerged;
+        }
+    }
+
+    private class Shard implements Runnable {
+        final OrderedArrayList<E> items;
+        final BinaryOperator<E> merger;
+        final Queue<Batch> inbox = new ConcurrentLinkedQueue<>();
+        final Thread writer;
+
+        Shard(int index, Comparator<? super E> ordening, BinaryOperator<E> merger) {
+            this.items = new OrderedArrayList<>(ordening);
+            this.merger = merger;
+            this.writer = new Thread(this, "shard-" + index);
+            this.writer.setDaemon(true);
+        }
+
+        void offer(Batch batch) {
+            this.inbox.offer(batch);
+            LockSupport.unpark(this.writer);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Batch batch = this.inbox.poll();
+                if (batch == null) {
+                    // the closed flag is set after the last offer, so an empty inbox after the flag stays empty
+                    if (closed && this.inbox.isEmpty()) return;
+                    LockSupport.park(this);
+                    continue;
+                }
+                if (failure.get() != null) continue;
+                try {
+                    long mergeStart = System.nanoTime();
+                    this.items.mergeAll(batch.items, this.merger);
+                    batch.onMerged.accept(System.nanoTime() - mergeStart);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * creates the shards and starts their writer threads
+     *
+     * @param ordening    the ordening of the items, which shall order the items by ascending shard key
+     * @param lowerBounds the smallest key of each shard, ascending, the first shard also takes all smaller keys
+     * @param shardKey    the key of an item which decides its shard
+     * @param merger      merges an item into the item with the same key in a shard
+     */
+    public ShardedOrderedList(Comparator<? super E> ordening, long[] lowerBounds,
+                              ToLongFunction<? super E> shardKey, BinaryOperator<E> merger) {
+        if (lowerBounds.length == 0) {
+            throw new IllegalArgumentException("A sharded list needs at least one shard");
+        }
+        for (int index = 1; index < lowerBounds.length; index++) {
+            if (lowerBounds[index] <= lowerBounds[index - 1]) {
+                throw new IllegalArgumentException("The lower bounds of the shards shall be strictly ascending: "
+                        + Arrays.toString(lowerBounds));
+            }
+        }
+        this.lowerBounds = lowerBounds.clone();
+        this.shardKey = shardKey;
+
+        this.shards = new ArrayList<>(lowerBounds.length);
+        for (int index = 0; index < lowerBounds.length; index++) {
+            this.shards.add(new Shard(index, ordening, merger));
+        }
+        for (Shard shard : this.shards) {
+            shard.writer.start();
+        }
+    }
+
+    /**
+     * splits the given range of keys into ranges of about equal numbers of keys
+     *
+     * @param sortedKeys the keys, ascending
+     * @param numShards  the requested number of shards
+     * @return the lower bounds of at most numShards shards, fewer if there are not enough distinct keys
+     */
+    public static long[] lowerBoundsOf(long[] sortedKeys, int numShards) {
+        long[] lowerBounds = new long[Math.max(1, numShards)];
+        lowerBounds[0] = Long.MIN_VALUE;
+        int numBounds = 1;
+        for (int shard = 1; shard < numShards && sortedKeys.length > 0; shard++) {
+            long bound = sortedKeys[(int) ((long) shard * sortedKeys.length / numShards)];
+            if (bound > lowerBounds[numBounds - 1]) {
+                lowerBounds[numBounds++] = bound;
+            }
+        }
+        return Arrays.copyOf(lowerBounds, numBounds);
+    }
+
+    public int getNumShards() {
+        return shards.size();
+    }
+
+    /**
+     * registers a named aggregate on every shard, which shall be done before any items are added
+     *
+     * @param name   the name of the aggregate
+     * @param mapper the value of an item which is summed
+     */
+    public void registerAggregate(String name, ToLongFunction<? super E> mapper) {
+        for (Shard shard : this.shards) {
+            shard.items.registerAggregate(name, mapper);
+        }
+    }
+
+    /**
+     * @param name the name of a registered aggregate
+     * @return the sum of the aggregate across all shards, after close
+     */
+    public long getAggregate(String name) {
+        long sum = 0;
+        for (Shard shard : this.shards) {
+            sum += shard.items.getAggregate(name);
+        }
+        return sum;
+    }
+
+    /**
+     * @param key
+     * @return the index of the shard that holds the key
+     */
+    public int shardOf(long key) {
+        int index = Arrays.binarySearch(this.lowerBounds, key);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    /**
+     * routes the items to the inboxes of their shards, where the writer threads merge them later.
+     * Null items are skipped.
+     *
+     * @param items    the items, which shall not be used by the caller anymore
+     * @param onMerged is called on the writer thread of every shard that received some of the items,
+     *                 with the nanoseconds that shard took to merge them
+     * @return the number of shards that received items, i.e. the number of calls of onMerged that will follow
+     */
+    public int addAll(List<E> items, Consumer<Long> onMerged) {
+        if (this.closed) {
+            throw new IllegalStateException("Items cannot be added to a closed sharded list");
+        }
+        List<List<E>> routed = new ArrayList<>(this.shards.size());
+        for (int index = 0; index < this.shards.size(); index++) {
+            routed.add(null);
+        }
+        for (E item : items) {
+            if (item == null) continue;
+            int shard = this.shardOf(this.shardKey.applyAsLong(item));
+            if (routed.get(shard) == null) routed.set(shard, new ArrayList<>());
+            routed.get(shard).add(item);
+        }
+
+        int numBatches = 0;
+        for (int index = 0; index < this.shards.size(); index++) {
+            if (routed.get(index) != null) {
+                this.shards.get(index).offer(new Batch(routed.get(index), onMerged));
+                numBatches++;
+            }
+        }
+        return numBatches;
+    }
+
+    /**
+     * waits until the writers have merged all items that were added, and stops the writers.
+     * The shards can be queried afterwards, but no items can be added anymore.
+     *
+     * @throws RuntimeException if a merge has failed
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        for (Shard shard : this.shards) {
+            LockSupport.unpark(shard.writer);
+        }
+        boolean interrupted = false;
+        for (Shard shard : this.shards) {
+            while (shard.writer.isAlive()) {
+                try {
+                    shard.writer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.failure.get() != null) {
+            throw new RuntimeException("Merging into a shard has failed", this.failure.get());
+        }
+    }
+
+    /**
+     * @param index
+     * @return the items of a shard, which shall only be read after close
+     */
+    public List<E> getShard(int index) {
+        return shards.get(index).items;
+    }
+
+    /**
+     * @return the number of items in all shards, after close
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : this.shards) {
+            size += shard.items.size();
+        }
+        return size;
+    }
+
+    /**
+     * adds the items of all shards to the target in the order of the shards, which is the order of the keys
+     *
+     * @param target
+     */
+    public void copyTo(List<E> target) {
+        for (Shard shard : this.shards) {
+            target.addAll(shard.items);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * a weighted Space-Saving sketch, which tracks the heaviest keys of a stream, such as the best selling barcodes,
+ * in a fixed number of counters. A key that is not monitored yet takes over the counter with the smallest count,
+ * and inherits that count as its overestimation error. Hence, for a stream of total weight W and m counters:
+ * every reported count overestimates the true weight of its key by at most W / m,
+ * and every key with a true weight above W / m is monitored.
+ * The counters are organised in an indexed min-heap, such that every update takes O(log m) time.
+ */
+public class SpaceSavingSketch {
+    private static final int EMPTY = -1;
+
+    private final int capacity;
+    private final long[] keys;              // the monitored key by counter slot
+    private final long[] counts;            // the estimated weight by counter slot
+    private final long[] errors;            // the maximum overestimation of the count by counter slot
+    private final int[] heap;               // the counter slots in the order of a min-heap on their counts
+    private final int[] heapPositions;      // the position in the heap by counter slot
+    private final int[] table;              // the counter slots by hash position of their keys, or EMPTY
+    private int size;
+    private long totalWeight;
+
+    /**
+     * an estimate of the weight of a monitored key
+     */
+    public static class HeavyHitter {
+        private final long key;
+        private final long count;
+        private final long error;
+
+        HeavyHitter(long key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        /**
+         * @return an upper bound of the true weight of the key
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the maximum overestimation of the count
+         */
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * @return a lower bound of the true weight of the key
+         */
+        public long getGuaranteedCount() {
+            return count - error;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d (±%d)", key, count, error);
+        }
+    }
+
+    /**
+     * @param capacity the number of counters, which bounds the error of every count by the total weight / capacity
+     */
+    public SpaceSavingSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("A sketch requires at least one counter");
+        }
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.heap = new int[capacity];
+        this.heapPositions = new int[capacity];
+        this.table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        Arrays.fill(this.table, EMPTY);
+    }
+
+    /**
+     * adds the weight of an occurrence of a key to the sketch
+     *
+     * @param key
+     * @param weight a positive weight, other weights are ignored
+     */
+    public synchronized void add(long key, long weight) {
+        if (weight <= 0) return;
+        this.totalWeight += weight;
+
+        int slot = this.slotOf(key);
+        if (slot == EMPTY) {
+            if (this.size < this.capacity) {
+                slot = this.size++;
+                this.keys[slot] = key;
+                this.counts[slot] = 0;
+                this.errors[slot] = 0;
+                this.heap[slot] = slot;
+                this.heapPositions[slot] = slot;
+                this.siftUp(slot);
+            } else {
+                // the key takes over the counter of the smallest count, which bounds the weight that it may have had
+                slot = this.heap[0];
+                this.removeFromTable(this.keys[slot]);
+                this.keys[slot] = key;
+                this.errors[slot] = this.counts[slot];
+            }
+            this.addToTable(slot);
+        }
+
+        // a count only grows, so it can only move down in the min-heap
+        this.counts[slot] += weight;
+        this.siftDown(this.heapPositions[slot]);
+    }
+
+    /**
+     * @param k
+     * @return the at most k monitored keys with the highest counts, ordered by decreasing count
+     */
+    public synchronized List<HeavyHitter> topK(int k) {
+        List<HeavyHitter> hitters = new ArrayList<>(this.size);
+        for (int slot = 0; slot < this.size; slot++) {
+            hitters.add(new HeavyHitter(this.keys[slot], this.counts[slot], this.errors[slot]));
+        }
+        return PurchaseTracker.selectTopsByKey(hitters, k, HeavyHitter::getCount, true);
+    }
+
+    /**
+     * @param key
+     * @return the estimated weight of the key, which is 0 if it is not monitored
+     */
+    public synchronized long estimate(long key) {
+        int slot = this.slotOf(key);
+        return slot == EMPTY ? 0 : this.counts[slot];
+    }
+
+    /**
+     * @return the maximum overestimation of any count, which is at most the total weight / capacity
+     */
+    public synchronized long getMaxError() {
+        return this.size < this.capacity ? 0 : this.counts[this.heap[0]];
+    }
+
+    public synchronized long getTotalWeight() {
+        return totalWeight;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(this.table, EMPTY);
+        this.size = 0;
+        this.totalWeight = 0;
+    }
+
+    private int slotOf(long key) {
+        int mask = this.table.length - 1;
+        for (int position = LongKeyIndex.hash(key) & mask; ; position = (position + 1) & mask) {
+            int slot = this.table[position];
+            if (slot == EMPTY || this.keys[slot] == key) return slot;
+        }
+    }
+
+    private void addToTable(int slot) {
+        int mask = this.table.length - 1;
+        int position = LongKeyIndex.hash(this.keys[slot]) & mask;
+        while (this.table[position] != EMPTY) position = (position + 1) & mask;
+        this.table[position] = slot;
+    }
+
+    private void removeFromTable(long key) {
+        int mask = this.table.length - 1;
+        int position = LongKeyIndex.hash(key) & mask;
+        while (this.keys[this.table[position]] != key) position = (position + 1) & mask;
+
+        // shift back the later entries of the probe sequence, which would become unreachable by the gap
+        int gap = position;
+        for (position = (gap + 1) & mask; this.table[position] != EMPTY; position = (position + 1) & mask) {
+            int home = LongKeyIndex.hash(this.keys[this.table[position]]) & mask;
+            if (((position - home) & mask) >= ((position - gap) & mask)) {
+                this.table[gap] = this.table[position];
+                gap = position;
+            }
+        }
+        this.table[gap] = EMPTY;
+    }
+
+    private void siftUp(int position) {
+        int slot = this.heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (this.counts[this.heap[parent]] <= this.counts[slot]) break;
+            this.moveInHeap(this.heap[parent], position);
+            position = parent;
+        }
+        this.moveInHeap(slot, position);
+    }
+
+    private void siftDown(int position) {
+        int slot = this.heap[position];
+        while (2 * position + 1 < this.size) {
+            int child = 2 * position + 1;
+            if (child + 1 < this.size && this.counts[this.heap[child + 1]] < this.counts[this.heap[child]]) child++;
+            if (this.counts[this.heap[child]] >= this.counts[slot]) break;
+            this.moveInHeap(this.heap[child], position);
+            position = child;
+        }
+        this.moveInHeap(slot, position);
+    }
+
+    private void moveInHeap(int slot, int position) {
+        this.heap[position] = slot;
+        this.heapPositions[slot] = position;
+    }
+}
@@ -0,0 +1,316 @@
+package models;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * a vault of products and purchase files, which is read through an NIO FileSystem.
+ * The vault can be a directory, a classpath resource inside the application jar, or a zip archive,
+ * so packaged deployments and archived vaults are imported in the same way as a directory on disk.
+ * Files are read through byte channels into direct buffers, which are pooled and reused across files,
+ * and lines are decoded explicitly as UTF-8. Gzip compressed files are decompressed while they are read.
+ */
+public class Vault implements AutoCloseable {
+    public static final Pattern COMPRESSED_FILE_PATTERN = Pattern.compile("(.*)\\.gz");   // group 1: the name inside
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Queue<ByteBuffer> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+
+    private final Path root;
+    private final FileSystem ownedFileSystem;      // the archive file system opened by this vault, or null
+
+    private Vault(Path root, FileSystem ownedFileSystem) {
+        this.root = root;
+        this.ownedFileSystem = ownedFileSystem;
+    }
+
+    /**
+     * opens a vault of a classpath resource, which may be a directory or file on disk or an entry of a jar
+     *
+     * @param resourceName the absolute name of the resource, e.g. /purchases
+     * @return the vault, which shall be closed after use
+     */
+    public static Vault ofResource(String resourceName) {
+        URL url = Vault.class.getResource(resourceName);
+        if (url == null) {
+            throw new IllegalArgumentException("Cannot find resource " + resourceName);
+        }
+        try {
+            URI uri = url.toURI();
+            if (!"jar".equals(uri.getScheme())) {
+                return new Vault(Path.of(uri), null);
+            }
+            // a resource inside a jar is found in the zip file system of that jar, which may be open already
+            try {
+                FileSystem fileSystem = FileSystems.newFileSystem(uri, Map.of());
+                return new Vault(fileSystem.provider().getPath(uri), fileSystem);
+            } catch (FileSystemAlreadyExistsException e) {
+                return new Vault(FileSystems.getFileSystem(uri).provider().getPath(uri), null);
+            }
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid resource location " + url, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open resource " + resourceName, e);
+        }
+    }
+
+    /**
+     * opens a vault of a path on disk: a directory or file, or a zip or jar archive of which the root is the vault
+     *
+     * @param path
+     * @return the vault, which shall be closed after use
+     */
+    public static Vault open(Path path) {
+        String fileName = String.valueOf(path.getFileName());
+        if (Files.isRegularFile(path) && (fileName.endsWith(".zip") || fileName.endsWith(".jar"))) {
+            try {
+                FileSystem fileSystem = FileSystems.newFileSystem(path);
+                return new Vault(fileSystem.getPath("/"), fileSystem);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open archive " + path, e);
+            }
+        }
+        return new Vault(path, null);
+    }
+
+    /**
+     * @return the root directory of the vault, or the file if the vault is a single file
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @param relativeName the name of a file or directory relative to the root, e.g. purchases or products.txt
+     * @return the path of that file or directory in the file system of the vault
+     */
+    public Path resolve(String relativeName) {
+        return root.resolve(relativeName);
+    }
+
+    /**
+     * @param file
+     * @return whether the file is gzip compressed, which forEachLine decompresses while it reads the file
+     */
+    public static boolean isCompressed(Path file) {
+        return COMPRESSED_FILE_PATTERN.matcher(nameOf(file)).matches();
+    }
+
+    /**
+     * traverses a directory of the vault recursively and collects every file of which the name matches the pattern.
+     * Compressed files match by the name of their content, i.e. branch.txt.gz matches the pattern of branch.txt.
+     * The files of every directory are visited in the order of their names, such that the date folders of the vault
+     * are imported in ascending order of their dates.
+     *
+     * @param directory a directory of the vault, or a single file
+     * @param pattern   the pattern of the names of the files to collect
+     * @return the matching files
+     */
+    public List<Path> listFiles(Path directory, Pattern pattern) {
+        List<Path> files = new ArrayList<>();
+        try {
+            collectFilesRecursively(directory, pattern, files);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list the files of " + directory, e);
+        }
+        return files;
+    }
+
+    private static void collectFilesRecursively(Path path, Pattern pattern, List<Path> files) throws IOException {
+        if (Files.isDirectory(path)) {
+            List<Path> entries = new ArrayList<>();
+            try (DirectoryStream<Path> directory = Files.newDirectoryStream(path)) {
+                directory.forEach(entries::add);
+            }
+            entries.sort(Comparator.comparing(Vault::nameOf));
+            for (Path entry : entries) {
+                collectFilesRecursively(entry, pattern, files);
+            }
+
+        } else {
+            Matcher compressed = COMPRESSED_FILE_PATTERN.matcher(nameOf(path));
+            String contentName = compressed.matches() ? compressed.group(1) : nameOf(path);
+            if (pattern.matcher(contentName).matches()) {
+                files.add(path);
+            }
+        }
+    }
+
+    /**
+     * @param file a file within the root of the vault
+     * @return the date, city and branch of the file, as encoded by its path relative to the root
+     */
+    public VaultLocation locationOf(Path file) {
+        return VaultLocation.fromVaultPath(this.root.relativize(file));
+    }
+
+    /**
+     * @param file
+     * @return the number of bytes of the file as it is stored, i.e. compressed if it is compressed
+     */
+    public long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the size of " + file, e);
+        }
+    }
+
+    /**
+     * passes every line of a file to the consumer, decoded as UTF-8 and without line terminators.
+     * Blank lines are skipped. Files that match COMPRESSED_FILE_PATTERN are decompressed while they are read.
+     *
+     * @param file
+     * @param consumer
+     */
+    public void forEachLine(Path file, Consumer<String> consumer) {
+        try (ReadableByteChannel channel = openChannel(file)) {
+            readLines(channel, true, consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + file, e);
+        }
+    }
+
+    /**
+     * passes every complete line of an uncompressed file beyond a byte offset to the consumer, like forEachLine.
+     * A last line without a line terminator may still be in the process of being written and is not passed.
+     *
+     * @param file
+     * @param offset   the byte offset in the file of the first line to be passed
+     * @param consumer
+     * @return the byte offset in the file after the last complete line
+     * @throws IllegalArgumentException if the file is compressed, which has no byte offsets of lines
+     */
+    public long forEachLine(Path file, long offset, Consumer<String> consumer) {
+        if (isCompressed(file)) {
+            throw new IllegalArgumentException("Cannot read compressed file " + file + " from an offset");
+        }
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            channel.position(offset);
+            return offset + readLines(channel, false, consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + file, e);
+        }
+    }
+
+    /**
+     * splits the bytes of the channel into lines in a pooled buffer and passes the lines to the consumer
+     *
+     * @param acceptLastLine whether a last line without a line terminator is passed too
+     * @return the number of bytes read up to and including the line terminator of the last complete line
+     */
+    private static long readLines(ReadableByteChannel channel, boolean acceptLastLine, Consumer<String> consumer)
+            throws IOException {
+        ByteBuffer buffer = BUFFER_POOL.poll();
+        if (buffer == null) buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        try {
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            long numCompleteBytes = 0;
+            buffer.clear();
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                int lineStart = 0;
+                for (int index = 0; index < buffer.limit(); index++) {
+                    if (buffer.get(index) != '\n') continue;
+
+                    line = append(line, lineLength, buffer, lineStart, index - lineStart);
+                    lineLength += index - lineStart;
+                    acceptLine(line, lineLength, consumer);
+                    numCompleteBytes += lineLength + 1;
+                    lineLength = 0;
+                    lineStart = index + 1;
+                }
+
+                // keep the bytes of the incomplete last line until the next read
+                line = append(line, lineLength, buffer, lineStart, buffer.limit() - lineStart);
+                lineLength += buffer.limit() - lineStart;
+                buffer.clear();
+            }
+            if (acceptLastLine) {
+                acceptLine(line, lineLength, consumer);
+                numCompleteBytes += lineLength;
+            }
+            return numCompleteBytes;
+        } finally {
+            BUFFER_POOL.offer(buffer);
+        }
+    }
+
+    private static ReadableByteChannel openChannel(Path file) throws IOException {
+        ReadableByteChannel channel = Files.newByteChannel(file);
+        if (isCompressed(file)) {
+            return Channels.newChannel(new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+        }
+        return channel;
+    }
+
+    /**
+     * copies length bytes of the buffer from position start after the first lineLength bytes of the line
+     *
+     * @return the line, or a larger copy of it if the bytes did not fit
+     */
+    private static byte[] append(byte[] line, int lineLength, ByteBuffer buffer, int start, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(2 * line.length, lineLength + length));
+        }
+        buffer.get(start, line, lineLength, length);
+        return line;
+    }
+
+    private static void acceptLine(byte[] line, int length, Consumer<String> consumer) {
+        if (length > 0 && line[length - 1] == '\r') length--;
+        String text = new String(line, 0, length, StandardCharsets.UTF_8);
+        if (!text.isBlank()) consumer.accept(text);
+    }
+
+    private static String nameOf(Path path) {
+        Path fileName = path.getFileName();
+        return fileName == null ? "" : fileName.toString();
+    }
+
+    /**
+     * closes the archive file system that was opened for the vault, if any
+     */
+    @Override
+    public void close() {
+        if (this.ownedFileSystem != null) {
+            try {
+                this.ownedFileSystem.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot close the vault " + this.root, e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return root.toUri().toString();
+    }
+}
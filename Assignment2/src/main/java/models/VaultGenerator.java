@@ -0,0 +1,224 @@
+package models;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * generates synthetic vaults in the format of the bundled vault, for load tests and benchmarks:
+ * a products.txt file, and a purchases folder with one file per day and branch in <date>/<city>/<branch>.txt.
+ * The popularity of the products follows a Zipf distribution, such that a few products are sold in most lines.
+ * Lines are written as they are generated, so the size of a vault is only limited by the disk.
+ */
+public class VaultGenerator {
+    private static final String[] CITY_NAMES = {"Amsterdam", "Rotterdam", "Utrecht", "Den Haag", "Eindhoven",
+            "Groningen", "Tilburg", "Almere", "Breda", "Nijmegen"};
+    private static final long FIRST_BARCODE = 8_700_000_000_000L;
+    private static final int WRITE_BUFFER_CHARS = 1 << 20;
+
+    private int numProducts = 10_000;
+    private int numCities = 2;
+    private int numBranchesPerCity = 5;
+    private int numDays = 10;
+    private LocalDate firstDate = LocalDate.of(2021, 10, 1);
+    private double zipfExponent = 1.0;
+    private double unknownBarcodeFraction = 0.01;
+    private int maxCountPerLine = 50;
+    private long seed = 42;
+
+    public VaultGenerator setNumProducts(int numProducts) {
+        this.numProducts = numProducts;
+        return this;
+    }
+
+    public VaultGenerator setNumCities(int numCities) {
+        this.numCities = numCities;
+        return this;
+    }
+
+    public VaultGenerator setNumBranchesPerCity(int numBranchesPerCity) {
+        this.numBranchesPerCity = numBranchesPerCity;
+        return this;
+    }
+
+    public VaultGenerator setNumDays(int numDays) {
+        this.numDays = numDays;
+        return this;
+    }
+
+    public VaultGenerator setFirstDate(LocalDate firstDate) {
+        this.firstDate = firstDate;
+        return this;
+    }
+
+    /**
+     * @param zipfExponent the skew of the popularity of the products, 0 for uniform, about 1 for realistic sales
+     */
+    public VaultGenerator setZipfExponent(double zipfExponent) {
+        this.zipfExponent = zipfExponent;
+        return this;
+    }
+
+    /**
+     * @param unknownBarcodeFraction the fraction of purchase lines with barcodes that are not in products.txt
+     */
+    public VaultGenerator setUnknownBarcodeFraction(double unknownBarcodeFraction) {
+        this.unknownBarcodeFraction = unknownBarcodeFraction;
+        return this;
+    }
+
+    public VaultGenerator setMaxCountPerLine(int maxCountPerLine) {
+        this.maxCountPerLine = maxCountPerLine;
+        return this;
+    }
+
+    public VaultGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public int getNumFiles() {
+        return numDays * numCities * numBranchesPerCity;
+    }
+
+    /**
+     * writes the products file and the purchases folder of a vault
+     *
+     * @param vault    the root directory of the vault, which is created if it does not exist
+     * @param numLines the total number of purchase lines, which are divided evenly across all files
+     * @throws IOException
+     */
+    public void generate(Path vault, long numLines) throws IOException {
+        Files.createDirectories(vault);
+        SplittableRandom random = new SplittableRandom(this.seed);
+        long[] barcodesByRank = this.writeProducts(vault.resolve("products.txt"), random);
+        double[] cumulativePopularity = this.cumulativePopularity();
+
+        int numFiles = this.getNumFiles();
+        int file = 0;
+        for (int day = 0; day < this.numDays; day++) {
+            String date = this.firstDate.plusDays(day).format(DateTimeFormatter.BASIC_ISO_DATE);
+            for (int city = 0; city < this.numCities; city++) {
+                for (int branch = 0; branch < this.numBranchesPerCity; branch++, file++) {
+                    Path branchFile = vault.resolve("purchases").resolve(date).resolve(cityName(city))
+                            .resolve("branch" + branch + ".txt");
+                    // the first files take one extra line each, until the remainder of the division is used up
+                    long numFileLines = numLines / numFiles + (file < numLines % numFiles ? 1 : 0);
+                    this.writePurchases(branchFile, numFileLines, barcodesByRank, cumulativePopularity, random.split());
+                }
+            }
+        }
+    }
+
+    /**
+     * writes the products file with random titles and prices
+     *
+     * @return the barcodes of the products in the order of their popularity, most popular first
+     */
+    private long[] writeProducts(Path productsFile, SplittableRandom random) throws IOException {
+        long[] barcodes = new long[this.numProducts];
+        try (BufferedWriter writer = Files.newBufferedWriter(productsFile, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(64);
+            for (int index = 0; index < this.numProducts; index++) {
+                barcodes[index] = FIRST_BARCODE + index;
+                line.setLength(0);
+                line.append(barcodes[index]).append(", Product ").append(index).append(", ");
+                Money.appendCents(line, 50 + random.nextInt(2000)).append('\n');
+                writer.append(line);
+            }
+        }
+
+        // the popularity of a product does not depend on its barcode
+        for (int index = barcodes.length - 1; index > 0; index--) {
+            int other = random.nextInt(index + 1);
+            long barcode = barcodes[index];
+            barcodes[index] = barcodes[other];
+            barcodes[other] = barcode;
+        }
+        return barcodes;
+    }
+
+    private void writePurchases(Path branchFile, long numFileLines, long[] barcodesByRank,
+                                double[] cumulativePopularity, SplittableRandom random) throws IOException {
+        Files.createDirectories(branchFile.getParent());
+        try (BufferedWriter writer = new BufferedWriter(
+                Files.newBufferedWriter(branchFile, StandardCharsets.UTF_8), WRITE_BUFFER_CHARS)) {
+            StringBuilder line = new StringBuilder(32);
+            for (long index = 0; index < numFileLines; index++) {
+                long barcode;
+                if (random.nextDouble() < this.unknownBarcodeFraction) {
+                    barcode = FIRST_BARCODE + this.numProducts + random.nextInt(Math.max(1, this.numProducts / 100));
+                } else {
+                    barcode = barcodesByRank[sampleRank(cumulativePopularity, random.nextDouble())];
+                }
+                line.setLength(0);
+                line.append(barcode).append(", ").append(1 + random.nextInt(this.maxCountPerLine)).append('\n');
+                writer.append(line);
+            }
+        }
+    }
+
+    /**
+     * @return the cumulative probabilities of the Zipf distribution of the product ranks, normalised to end at 1.0
+     */
+    private double[] cumulativePopularity() {
+        double[] cumulative = new double[this.numProducts];
+        double sum = 0;
+        for (int rank = 0; rank < this.numProducts; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, this.zipfExponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < this.numProducts; rank++) {
+            cumulative[rank] /= sum;
+        }
+        return cumulative;
+    }
+
+    /**
+     * @return the first rank of which the cumulative probability is at least the uniform sample
+     */
+    static int sampleRank(double[] cumulativePopularity, double uniform) {
+        int index = Arrays.binarySearch(cumulativePopularity, uniform);
+        return Math.min(cumulativePopularity.length - 1, index >= 0 ? index : -index - 1);
+    }
+
+    private static String cityName(int city) {
+        String name = CITY_NAMES[city % CITY_NAMES.length];
+        return city < CITY_NAMES.length ? name : name + (city / CITY_NAMES.length + 1);
+    }
+
+    /**
+     * generates a vault from the command line:
+     * VaultGenerator <vault directory> <number of lines> [products] [cities] [branches per city] [days] [zipf exponent]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: VaultGenerator <vault directory> <number of lines>"
+                    + " [products] [cities] [branches per city] [days] [zipf exponent]");
+            return;
+        }
+
+        VaultGenerator generator = new VaultGenerator().setSeed(new Random().nextLong());
+        if (args.length > 2) generator.setNumProducts(Integer.parseInt(args[2]));
+        if (args.length > 3) generator.setNumCities(Integer.parseInt(args[3]));
+        if (args.length > 4) generator.setNumBranchesPerCity(Integer.parseInt(args[4]));
+        if (args.length > 5) generator.setNumDays(Integer.parseInt(args[5]));
+        if (args.length > 6) generator.setZipfExponent(Double.parseDouble(args[6]));
+
+        long numLines = Long.parseLong(args[1]);
+        try {
+            generator.generate(Path.of(args[0]), numLines);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot generate vault " + args[0], e);
+        }
+        System.out.printf("Generated %d purchase lines in %d files in %s.\n", numLines, generator.getNumFiles(), args[0]);
+    }
+}
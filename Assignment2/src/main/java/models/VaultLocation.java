@@ -0,0 +1,84 @@
+package models;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * the date, city and branch of a purchase file, as encoded by its path within the purchases vault
+ * e.g. 20211001/Amsterdam/vijzelstraat.txt or 20211001/webshop.txt
+ */
+public class VaultLocation {
+    public static final VaultLocation UNKNOWN = new VaultLocation("", "", "");
+
+    private final String date;      // the yyyyMMdd name of the date folder, or "" if there is none
+    private final String city;      // the city folder(s) between the date and the branch file, or "" if there are none
+    private final String branch;    // the name of the branch file without its extensions
+
+    public VaultLocation(String date, String city, String branch) {
+        this.date = date;
+        this.city = city;
+        this.branch = branch;
+    }
+
+    /**
+     * derives the location from the path of a purchase file relative to the root of the vault
+     *
+     * @param relativePath
+     * @return the location of the purchase file
+     */
+    public static VaultLocation fromVaultPath(Path relativePath) {
+        int numNames = relativePath.getNameCount();
+        String fileName = relativePath.getFileName().toString();
+        int extension = fileName.indexOf('.');
+        String branch = extension > 0 ? fileName.substring(0, extension) : fileName;
+
+        String date = "";
+        int firstCityName = 0;
+        if (numNames > 1 && relativePath.getName(0).toString().matches("\\d{8}")) {
+            date = relativePath.getName(0).toString();
+            firstCityName = 1;
+        }
+
+        StringBuilder city = new StringBuilder();
+        for (int nameIndex = firstCityName; nameIndex < numNames - 1; nameIndex++) {
+            if (city.length() > 0) city.append('/');
+            city.append(relativePath.getName(nameIndex));
+        }
+
+        return new VaultLocation(date, city.toString(), branch);
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof VaultLocation)) {
+            return false;
+        }
+        VaultLocation location = (VaultLocation) other;
+        return date.equals(location.date) && city.equals(location.city) && branch.equals(location.branch);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(date, city, branch);
+    }
+
+    @Override
+    public String toString() {
+        return date + "/" + city + "/" + branch;
+    }
+}
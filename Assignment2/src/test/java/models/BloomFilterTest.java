@@ -0,0 +1,43 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BloomFilterTest {
+
+    BloomFilter filter;
+    long[] barcodes;
+
+    @BeforeEach
+    private void setup() {
+        Random random = new Random(40);
+        barcodes = new long[10000];
+        filter = new BloomFilter(barcodes.length);
+        for (int index = 0; index < barcodes.length; index++) {
+            barcodes[index] = 1000000000000L + random.nextInt(1000000) * 7L;
+            filter.add(barcodes[index]);
+        }
+    }
+
+    @Test
+    public void addedKeysAreNeverRejected() {
+        for (long barcode : barcodes) {
+            assertTrue(filter.mightContain(barcode));
+        }
+    }
+
+    @Test
+    public void mostUnknownKeysAreRejected() {
+        int numFalsePositives = 0;
+        for (long barcode = 1; barcode <= 100000; barcode++) {
+            // none of these barcodes have been added
+            if (filter.mightContain(barcode)) numFalsePositives++;
+        }
+        assertEquals(7, filter.getNumHashes());
+        assertTrue(numFalsePositives < 2000, "false positives: " + numFalsePositives);
+    }
+}
@@ -0,0 +1,71 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentOrderedListTest {
+
+    OrderedList<Purchase> purchases;
+    List<Product> products;
+
+    @BeforeEach
+    private void setup() {
+        purchases = new ConcurrentOrderedList<>(Comparator.comparing(Purchase::getBarcode));
+        purchases.registerAggregate("volume", Purchase::getCount);
+        products = new ArrayList<>();
+        for (int index = 0; index < 100; index++) {
+            products.add(new Product(1000L - index, "product " + index, 1.0));
+        }
+    }
+
+    @Test
+    public void itemsAreOrderedAndUniqueByKey() {
+        assertTrue(purchases.add(new Purchase(products.get(0), 1)));
+        assertTrue(purchases.add(new Purchase(products.get(2), 2)));
+        assertTrue(purchases.add(new Purchase(products.get(1), 3)));
+        assertFalse(purchases.add(new Purchase(products.get(1), 4)));
+
+        assertEquals(3, purchases.size());
+        assertEquals(998L, purchases.get(0).getBarcode());
+        assertEquals(1000L, purchases.get(2).getBarcode());
+        assertEquals(1, purchases.indexOf(new Purchase(products.get(1), 0)));
+        assertEquals(6, purchases.getAggregate("volume"));
+
+        assertTrue(purchases.remove(new Purchase(products.get(2), 0)));
+        assertEquals(2, purchases.size());
+        assertEquals(4, purchases.getAggregate("volume"));
+
+        Purchase first = purchases.get(0);
+        assertSame(first, purchases.remove(0));
+        assertEquals(1, purchases.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> purchases.remove(1));
+    }
+
+    @Test
+    public void concurrentMergesOfTheSameKeysAreAtomic() throws InterruptedException {
+        final int numThreads = 4, numRounds = 2000;
+        List<Thread> threads = new ArrayList<>();
+        for (int thread = 0; thread < numThreads; thread++) {
+            threads.add(new Thread(() -> {
+                for (int round = 0; round < numRounds; round++) {
+                    Product product = products.get(round % products.size());
+                    purchases.merge(new Purchase(product, 1), (p1, p2) -> { p1.addCount(p2.getCount()); return p1; });
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(products.size(), purchases.size());
+        assertEquals(numThreads * numRounds, purchases.getAggregate("volume"));
+        for (Purchase purchase : purchases) {
+            assertEquals(numThreads * numRounds / products.size(), purchase.getCount());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExternalAggregatorTest {
+
+    @TempDir
+    Path spillDirectory;
+    ExternalAggregator aggregator;
+
+    @BeforeEach
+    private void setup() {
+        aggregator = new ExternalAggregator(16, spillDirectory);
+    }
+
+    @Test
+    public void mergedRunsMatchInMemoryTotals() throws IOException {
+        assertMergedRunsMatchInMemoryTotals(aggregator);
+    }
+
+    @Test
+    public void runsBeyondTheFanInAreMergedInSeveralPasses() throws IOException {
+        // 5000 additions of 300 keys with a budget of 16 keys spill far more than 3 runs
+        assertMergedRunsMatchInMemoryTotals(new ExternalAggregator(16, 3, spillDirectory));
+    }
+
+    private void assertMergedRunsMatchInMemoryTotals(ExternalAggregator aggregator) throws IOException {
+        Map<Long, long[]> expected = new TreeMap<>();
+        Random random = new Random(38);
+        for (int index = 0; index < 5000; index++) {
+            long key = random.nextInt(300) * 1000003L;
+            long count = 1 + random.nextInt(10);
+            long amount = count * (100 + random.nextInt(5));
+            long[] totals = expected.computeIfAbsent(key, k -> new long[2]);
+            totals[0] += count;
+            totals[1] += amount;
+            aggregator.add(key, count, amount);
+        }
+        assertTrue(aggregator.getNumRuns() > 3);
+
+        List<Long> keys = new ArrayList<>();
+        aggregator.mergeRuns((key, count, amount) -> {
+            keys.add(key);
+            assertArrayEquals(expected.get(key), new long[]{count, amount});
+        });
+        assertEquals(new ArrayList<>(expected.keySet()), keys);
+
+        try (var runFiles = Files.list(spillDirectory)) {
+            assertEquals(0, runFiles.count());
+        }
+    }
+
+    @Test
+    public void smallInputsAreMergedWithoutSpilledRunsInBetween() throws IOException {
+        aggregator.add(7, 2, 20);
+        aggregator.add(3, 1, 15);
+        aggregator.add(7, 5, 45);
+        assertEquals(0, aggregator.getNumRuns());
+
+        List<long[]> totals = new ArrayList<>();
+        aggregator.mergeRuns((key, count, amount) -> totals.add(new long[]{key, count, amount}));
+        assertEquals(2, totals.size());
+        assertArrayEquals(new long[]{3, 1, 15}, totals.get(0));
+        assertArrayEquals(new long[]{7, 7, 65}, totals.get(1));
+    }
+}
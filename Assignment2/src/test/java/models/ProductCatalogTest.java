@@ -0,0 +1,78 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProductCatalogTest {
+
+    List<Product> products;
+    ProductCatalog catalog;
+
+    @BeforeEach
+    private void setup() {
+        products = new ArrayList<>();
+        PurchaseTracker.importItemsFromFile(products,
+                ProductCatalogTest.class.getResource("/products.txt").getPath(), Product::fromLine);
+        catalog = new ProductCatalog(1, products);
+    }
+
+    @Test
+    public void viewsMatchTheImportedProducts() {
+        assertEquals(products.size(), catalog.size());
+        for (Product product : products) {
+            Product view = catalog.findProduct(product.getBarcode());
+            assertEquals(product, view);
+            assertEquals(product.getTitle(), view.getTitle());
+            assertEquals(product.getPriceCents(), view.getPriceCents());
+            assertEquals(product.toString(), view.toString());
+        }
+        assertNull(catalog.findProduct(42L));
+        assertEquals(-1, catalog.indexOf(42L));
+
+        List<Product> ordered = catalog.getProducts();
+        assertEquals(0, catalog.indexOf(ordered.get(0).getBarcode()));
+        for (int index = 1; index < ordered.size(); index++) {
+            assertTrue(ordered.get(index - 1).getBarcode() < ordered.get(index).getBarcode());
+            assertEquals(index, catalog.indexOf(ordered.get(index).getBarcode()));
+            // a barcode between two products is not found by the search index
+            long between = ordered.get(index).getBarcode() - 1;
+            if (between != ordered.get(index - 1).getBarcode()) assertEquals(-1, catalog.indexOf(between));
+        }
+        assertEquals(-1, catalog.indexOf(ordered.get(ordered.size() - 1).getBarcode() + 1));
+        assertThrows(UnsupportedOperationException.class, () -> ordered.add(products.get(0)));
+    }
+
+    @Test
+    public void repeatedTitlesAreStoredOnce() {
+        List<Product> variants = new ArrayList<>();
+        for (int index = 0; index < 100; index++) {
+            variants.add(Product.withPriceCents(1000 + index, "Calvé Pindakaas 650g", 425 + index));
+        }
+        variants.add(Product.withPriceCents(999, null, 100));
+        ProductCatalog variantsCatalog = new ProductCatalog(1, variants);
+
+        assertEquals("Calvé Pindakaas 650g".getBytes(StandardCharsets.UTF_8).length, variantsCatalog.getTitleArenaSize());
+        assertEquals("Calvé Pindakaas 650g", variantsCatalog.findProduct(1050).getTitle());
+        assertEquals(475, variantsCatalog.findProduct(1050).getPriceCents());
+        assertNull(variantsCatalog.findProduct(999).getTitle());
+        assertEquals(999, variantsCatalog.getProducts().get(0).getBarcode());
+    }
+
+    @Test
+    public void lookupsShareOneReadOnlyViewPerProduct() {
+        Product product = catalog.productAt(3);
+        assertSame(product, catalog.findProduct(product.getBarcode()));
+        assertSame(product, catalog.getProducts().get(3));
+
+        assertThrows(UnsupportedOperationException.class, () -> product.setPriceCents(1));
+        assertThrows(UnsupportedOperationException.class, () -> product.setPrice(1.0));
+        Product imported = products.stream().filter(product::equals).findFirst().orElseThrow();
+        assertEquals(imported.getPriceCents(), product.getPriceCents());
+    }
+}
@@ -30,4 +30,14 @@ public class ProductTest {
         assertEquals("Bounty bar", product2.getTitle());
         assertEquals(0.85, product2.getPrice());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void pricesAreKeptInExactCents() {
+        Product product = Product.fromLine("111111111111111, Mars bar, 0.9");
+        assertEquals(90, product.getPriceCents());
+        assertEquals(123, stroopwafels.getPriceCents());
+        assertEquals(1005, Money.parseCents("10.045"));
+        assertEquals(-250, Money.parseCents("-2.5"));
+        assertThrows(NumberFormatException.class, () -> Money.parseCents("1.2x"));
+    }
+}
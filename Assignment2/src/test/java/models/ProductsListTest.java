@@ -3,10 +3,21 @@ package models;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BinaryOperator;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ProductsListTest {
 
@@ -94,4 +105,163 @@ public class ProductsListTest {
             assertEquals(index, products.indexOf(products.get(index)));
         }
     }
+
+    @Test
+    public void registeredAggregatesAreMaintained() {
+        products.registerAggregate("priceCents", Product::getPriceCents);
+        assertEquals(3414, products.getAggregate("priceCents"));
+
+        products.sort();
+        for (int index = 0; index < products.size(); index++) {
+            products.merge(products.get(index), (p1,p2) -> { p1.setPriceCents(p1.getPriceCents() * 2); return p1;} );
+        }
+        assertEquals(6828, products.getAggregate("priceCents"));
+
+        products.merge(product3a, (p1,p2) -> p1);
+        assertEquals(6928, products.getAggregate("priceCents"));
+        products.set(products.size()-1, product3b);
+        assertEquals(7078, products.getAggregate("priceCents"));
+        products.remove(product3b);
+        products.remove(0);
+        assertEquals(products.aggregate(Product::getPriceCents), products.getAggregate("priceCents"));
+        products.removeIf(product -> product.getPriceCents() > 300);
+        assertEquals(products.aggregate(Product::getPriceCents), products.getAggregate("priceCents"));
+        products.clear();
+        assertEquals(0, products.getAggregate("priceCents"));
+    }
+
+    @Test
+    public void bulkRemovalsKeepTheSortedSectionAndChangeTheVersion() {
+        OrderedArrayList<Product> list = (OrderedArrayList<Product>) products;
+        list.registerAggregate("priceCents", Product::getPriceCents);
+        list.sort();
+        list.add(product3a);
+        assertEquals(12, list.getNumSorted());
+
+        list.removeIf(product -> product.getPriceCents() > 300);
+        assertEquals(list.size() - 1, list.getNumSorted());
+        assertEquals(list.size() - 1, list.indexOf(product3a));
+        for (int index = 0; index < list.getNumSorted(); index++) {
+            assertEquals(index, list.indexOf(list.get(index)));
+        }
+
+        list.subList(1, 3).clear();
+        assertEquals(list.size() - 1, list.getNumSorted());
+        assertEquals(list.aggregate(Product::getPriceCents), list.getAggregate("priceCents"));
+        for (int index = 0; index < list.size(); index++) {
+            assertEquals(index, list.indexOf(list.get(index)));
+        }
+
+        long version = list.getVersion();
+        list.retainAll(List.of());
+        assertTrue(list.isEmpty());
+        assertTrue(list.getVersion() != version);
+        assertEquals(0, list.getNumSorted());
+        assertEquals(0, list.getAggregate("priceCents"));
+    }
+
+    @Test
+    public void mergeAllMatchesMergingOneAtATime() {
+        BinaryOperator<Purchase> add = (p1, p2) -> { p1.addCount(p2.getCount()); return p1; };
+        OrderedList<Purchase> oneAtATime = new OrderedArrayList<>(Comparator.comparing(Purchase::getBarcode));
+        OrderedList<Purchase> bulk = new OrderedArrayList<>(Comparator.comparing(Purchase::getBarcode));
+        bulk.registerAggregate("volume", Purchase::getCount);
+
+        Random random = new Random(37);
+        for (int round = 0; round < 10; round++) {
+            List<Purchase> batch = new ArrayList<>();
+            for (int index = 0; index < 100; index++) {
+                Product product = new Product(random.nextInt(150), "", 1.0);
+                int count = 1 + random.nextInt(5);
+                oneAtATime.merge(new Purchase(product, count), add);
+                batch.add(new Purchase(product, count));
+            }
+            batch.add(null);
+            bulk.mergeAll(batch, add);
+        }
+
+        oneAtATime.sort();
+        assertEquals(oneAtATime.size(), bulk.size());
+        long volume = 0;
+        for (int index = 0; index < bulk.size(); index++) {
+            assertEquals(oneAtATime.get(index).getBarcode(), bulk.get(index).getBarcode());
+            assertEquals(oneAtATime.get(index).getCount(), bulk.get(index).getCount());
+            assertEquals(index, bulk.indexOfByBinarySearch(bulk.get(index)));
+            volume += bulk.get(index).getCount();
+        }
+        assertEquals(volume, bulk.getAggregate("volume"));
+    }
+
+    @Test
+    public void sortMergesNewItemsIntoTheSortedSection() {
+        OrderedList<Product> numbers = new OrderedArrayList<>(Comparator.comparing(Product::getBarcode));
+        Random random = new Random(42);
+        List<Long> expected = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            int numNewItems = random.nextInt(round % 2 == 0 ? 5 : 200);
+            for (int index = 0; index < numNewItems; index++) {
+                long barcode = random.nextInt(1000);
+                numbers.add(new Product(barcode));
+                expected.add(barcode);
+            }
+            numbers.sort();
+            expected.sort(Comparator.naturalOrder());
+
+            assertEquals(expected.size(), numbers.size());
+            for (int index = 0; index < numbers.size(); index++) {
+                assertEquals(expected.get(index), numbers.get(index).getBarcode());
+            }
+        }
+    }
+
+    @Test
+    public void searchIndexFindsByKey() {
+        OrderedArrayList<Product> catalog = (OrderedArrayList<Product>) products;
+        catalog.setSearchKey(Product::getBarcode);
+        catalog.sort();
+        for (int index = 0; index < catalog.size(); index++) {
+            assertEquals(index, catalog.indexOf(catalog.get(index)));
+            assertEquals(index, catalog.indexOfBySearchKey(catalog.get(index).getBarcode()));
+        }
+        assertEquals(-1, catalog.indexOfBySearchKey(1L));
+        assertEquals(-1, catalog.indexOfBySearchKey(999999999999999L));
+        assertEquals(-1, catalog.indexOf(new Product(999999999999999L)));
+
+        catalog.add(product3a);
+        assertEquals(-1, catalog.indexOfBySearchKey(product3a.getBarcode()));
+        assertEquals(catalog.size()-1, catalog.indexOf(product3a));
+        catalog.sort();
+        catalog.remove(0);
+        for (int index = 0; index < catalog.size(); index++) {
+            assertEquals(index, catalog.indexOf(catalog.get(index)));
+        }
+    }
+
+    @Test
+    public void deserializedListKeepsItemsAndOrderButNoAggregates() throws IOException, ClassNotFoundException {
+        OrderedArrayList<String> words = new OrderedArrayList<>(Comparator.<String>naturalOrder());
+        words.addAll(List.of("pear", "apple", "fig"));
+        words.sort();
+        words.registerAggregate("length", String::length);
+        words.setSearchKey(String::length);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(words);
+        }
+        OrderedArrayList<String> restored;
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            @SuppressWarnings("unchecked")
+            OrderedArrayList<String> read = (OrderedArrayList<String>) input.readObject();
+            restored = read;
+        }
+
+        assertEquals(List.of("apple", "fig", "pear"), restored);
+        assertEquals(3, restored.getNumSorted());
+        assertEquals(1, restored.indexOf("fig"));
+        assertThrows(IllegalArgumentException.class, () -> restored.getAggregate("length"));
+        restored.registerAggregate("length", String::length);
+        restored.add("kiwi");
+        assertEquals(16, restored.getAggregate("length"));
+    }
 }
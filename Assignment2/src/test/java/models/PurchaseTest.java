@@ -40,4 +40,24 @@ public class PurchaseTest {
         Purchase purchase1 = Purchase.fromLine("111111111111111, 10", products);
         assertEquals("111111111111111/Stroopwafels 10st/10/12.30", purchase1.toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void revenueIsExactInCents() {
+        Purchase purchase = new Purchase(marsbar, 3);
+        assertEquals(258, purchase.getRevenueCents());
+        assertEquals("2.58", purchase.calculateRevenue(marsbar));
+        assertEquals("0.86", new Purchase(marsbar, 1).calculateRevenue(marsbar));
+        assertEquals("-12.05", Money.format(-1205));
+    }
+
+    @Test
+    public void revenueIsAttributedToThePriceOfEachVersion() {
+        Product newMarsbar = Product.withPriceCents(marsbar.getBarcode(), marsbar.getTitle(), 90);
+        Purchase purchase = new Purchase(marsbar, 3);
+        purchase.addPurchase(new Purchase(newMarsbar, 2));
+        assertEquals(5, purchase.getCount());
+        assertEquals(3 * 86 + 2 * 90, purchase.getRevenueCents());
+        purchase.addCount(1);
+        assertEquals(3 * 86 + 2 * 90 + 86, purchase.getRevenueCents());
+    }
+}
@@ -1,7 +1,28 @@
 package models;
 
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Named;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -22,6 +43,229 @@ public class PurchaseTrackerTest {
     public void importVaultCheck() {
         assertEquals(61, purchaseTracker.getProducts().size());
         assertEquals(61, purchaseTracker.getPurchases().size());
-        assertEquals(16730, purchaseTracker.getPurchases().stream().mapToInt(Purchase::getCount).sum());
+        assertEquals(16730, purchaseTracker.getPurchases().stream().mapToLong(Purchase::getCount).sum());
+        assertEquals(16730, purchaseTracker.getTotalVolume());
+        assertEquals(PurchaseTracker.totalRevenueCents(purchaseTracker.getPurchases()), purchaseTracker.getTotalRevenueCents());
+    }
+
+    @Test
+    public void findTopsMatchesFullSort() {
+        Comparator<Purchase> byCount = Comparator.comparing(Purchase::getCount);
+        List<Purchase> sorted = new ArrayList<>(purchaseTracker.getPurchases());
+        sorted.sort(byCount);
+
+        List<Purchase> tops = purchaseTracker.findTops(5, byCount);
+        assertEquals(5, tops.size());
+        for (int rank = 0; rank < tops.size(); rank++) {
+            assertEquals(sorted.get(rank).getCount(), tops.get(rank).getCount());
+        }
+
+        assertEquals(61, purchaseTracker.findTops(100, byCount).size());
+        assertTrue(purchaseTracker.findTops(0, byCount).isEmpty());
+    }
+
+    @Test
+    public void findTopsByKeyMatchesComparatorRanking() {
+        Comparator<Purchase> byRevenue = Comparator.comparing(Purchase::getRevenueCents).reversed();
+        List<Purchase> expected = purchaseTracker.findTops(10, byRevenue);
+        List<Purchase> tops = purchaseTracker.findTopsByKey(10, Purchase::getRevenueCents, true);
+        assertEquals(10, tops.size());
+        for (int rank = 0; rank < tops.size(); rank++) {
+            assertEquals(expected.get(rank).getRevenueCents(), tops.get(rank).getRevenueCents());
+        }
+
+        List<Purchase> worst = purchaseTracker.findTopsByDoubleKey(61, purchase -> -purchase.getCount(), true);
+        assertEquals(61, worst.size());
+        for (int rank = 1; rank < worst.size(); rank++) {
+            assertTrue(worst.get(rank - 1).getCount() <= worst.get(rank).getCount());
+        }
+        assertTrue(purchaseTracker.findTopsByKey(0, Purchase::getCount, false).isEmpty());
+
+        assertTrue(PurchaseTracker.sortableKey(-2.5) < PurchaseTracker.sortableKey(-1.0));
+        assertTrue(PurchaseTracker.sortableKey(-1.0) < PurchaseTracker.sortableKey(0.0));
+        assertTrue(PurchaseTracker.sortableKey(0.0) < PurchaseTracker.sortableKey(3.75));
+    }
+
+    @Test
+    public void snapshotRestoresProductsAndPurchases(@TempDir Path tempDir) throws IOException {
+        Path snapshotFile = tempDir.resolve("purchases.snapshot");
+        purchaseTracker.saveSnapshot(snapshotFile);
+
+        PurchaseTracker restoredTracker = new PurchaseTracker();
+        restoredTracker.loadSnapshot(snapshotFile);
+
+        assertEquals(61, restoredTracker.getProducts().size());
+        assertEquals(61, restoredTracker.getPurchases().size());
+        assertEquals(16730, restoredTracker.getPurchases().stream().mapToLong(Purchase::getCount).sum());
+        for (int index = 0; index < purchaseTracker.getProducts().size(); index++) {
+            assertEquals(purchaseTracker.getProducts().get(index).toString(), restoredTracker.getProducts().get(index).toString());
+        }
+        assertEquals(purchaseTracker.totalRevenue(purchaseTracker.getPurchases()),
+                restoredTracker.totalRevenue(restoredTracker.getPurchases()), 0.001);
+
+        // saving again replaces the snapshot without leaving the temporary file behind
+        restoredTracker.saveSnapshot(snapshotFile);
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(snapshotFile), files.toList());
+        }
+    }
+
+    @Test
+    public void corruptSnapshotsAreRejected(@TempDir Path tempDir) throws IOException {
+        Path snapshotFile = tempDir.resolve("purchases.snapshot");
+        purchaseTracker.saveSnapshot(snapshotFile);
+        byte[] content = Files.readAllBytes(snapshotFile);
+
+        Path truncatedFile = tempDir.resolve("truncated.snapshot");
+        Files.write(truncatedFile, Arrays.copyOf(content, content.length - 1));
+        IOException truncated = assertThrows(IOException.class, () -> PurchaseSnapshot.load(truncatedFile));
+        assertTrue(truncated.getMessage().contains(truncatedFile.toString()));
+
+        // a number of purchases in the header that does not fit the file
+        Path inflatedFile = tempDir.resolve("inflated.snapshot");
+        byte[] inflated = content.clone();
+        ByteBuffer.wrap(inflated).putInt(3 * Integer.BYTES, Integer.MAX_VALUE);
+        Files.write(inflatedFile, inflated);
+        assertThrows(IOException.class, () -> PurchaseSnapshot.load(inflatedFile));
+
+        PurchaseTracker restoredTracker = new PurchaseTracker();
+        assertThrows(UncheckedIOException.class, () -> restoredTracker.loadSnapshot(tempDir.resolve("missing")));
+    }
+
+    /**
+     * the alternate import modes, from a resource and from a path, with whether they feed the sales cube
+     */
+    private static Stream<Arguments> alternateImports() {
+        Path vaultRoot = Path.of(PurchaseTrackerTest.class.getResource("/purchases").getPath());
+        // a budget of 10 barcodes requires several spilled runs for the 61 products
+        return Stream.of(
+                alternateImport("concurrent", true, tracker -> tracker.importPurchasesFromVault("/purchases", 4)),
+                alternateImport("concurrent path", true, tracker -> tracker.importPurchasesFromVault(vaultRoot, 4)),
+                alternateImport("virtual threads", true,
+                        tracker -> tracker.importPurchasesFromVaultOnVirtualThreads("/purchases", 2)),
+                alternateImport("virtual threads path", true,
+                        tracker -> tracker.importPurchasesFromVaultOnVirtualThreads(vaultRoot, 2)),
+                alternateImport("sharded", true,
+                        tracker -> tracker.importPurchasesFromVaultSharded("/purchases", 3, 4)),
+                alternateImport("sharded path", true,
+                        tracker -> tracker.importPurchasesFromVaultSharded(vaultRoot, 3, 4)),
+                alternateImport("external", false,
+                        tracker -> tracker.importPurchasesFromVaultExternally("/purchases", 10)),
+                alternateImport("external path", false,
+                        tracker -> tracker.importPurchasesFromVaultExternally(vaultRoot, 10)));
+    }
+
+    private static Arguments alternateImport(String name, boolean feedsSalesCube, Consumer<PurchaseTracker> importer) {
+        return Arguments.of(Named.of(name, importer), feedsSalesCube);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("alternateImports")
+    public void alternateImportMatchesSequentialImport(Consumer<PurchaseTracker> importer, boolean feedsSalesCube) {
+        PurchaseTracker alternateTracker = new PurchaseTracker();
+        alternateTracker.importProductsFromVault("/products.txt");
+        importer.accept(alternateTracker);
+
+        assertEquals(61, alternateTracker.getPurchases().size());
+        assertEquals(16730, alternateTracker.getTotalVolume());
+        assertEquals(purchaseTracker.getTotalRevenueCents(), alternateTracker.getTotalRevenueCents());
+        for (int index = 0; index < purchaseTracker.getPurchases().size(); index++) {
+            Purchase purchase = purchaseTracker.getPurchases().get(index);
+            assertEquals(purchase.getBarcode(), alternateTracker.getPurchases().get(index).getBarcode());
+            assertEquals(purchase.getCount(), alternateTracker.getPurchases().get(index).getCount());
+            assertEquals(purchase.getRevenueCents(), alternateTracker.getPurchases().get(index).getRevenueCents());
+        }
+        assertEquals(417, alternateTracker.getImportStatistics().getNumLines());
+        assertEquals(14, alternateTracker.getImportStatistics().getFiles().size());
+        assertEquals(feedsSalesCube ? 16730 : 0, alternateTracker.getSalesCube().volume(null, null, null, null));
+    }
+
+    @Test
+    public void compressedVaultMatchesPlainVault(@TempDir Path tempDir) throws IOException {
+        Path plainVault = Path.of(PurchaseTrackerTest.class.getResource("/purchases").getPath());
+        List<Path> plainFiles;
+        try (Stream<Path> files = Files.walk(plainVault)) {
+            plainFiles = files.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        // compress every other purchase file of a copy of the vault
+        for (int index = 0; index < plainFiles.size(); index++) {
+            Path target = tempDir.resolve(plainVault.relativize(plainFiles.get(index)).toString());
+            Files.createDirectories(target.getParent());
+            if (index % 2 == 0) {
+                try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(Path.of(target + ".gz")))) {
+                    Files.copy(plainFiles.get(index), output);
+                }
+            } else {
+                Files.copy(plainFiles.get(index), target);
+            }
+        }
+
+        PurchaseTracker compressedTracker = new PurchaseTracker();
+        compressedTracker.importProductsFromVault("/products.txt");
+        compressedTracker.importPurchasesFromVault(tempDir);
+
+        assertEquals(61, compressedTracker.getPurchases().size());
+        assertEquals(16730, compressedTracker.getTotalVolume());
+        assertEquals(purchaseTracker.getTotalRevenueCents(), compressedTracker.getTotalRevenueCents());
+        assertEquals(417, compressedTracker.getImportStatistics().getNumLines());
+        assertEquals(16730, compressedTracker.getSalesCube().volume(null, null, null, null));
+        assertEquals(purchaseTracker.getSalesCube().volume("20211002", "Rotterdam", "lijnbaan", null),
+                compressedTracker.getSalesCube().volume("20211002", "Rotterdam", "lijnbaan", null));
+    }
+
+    @Test
+    @Timeout(10)
+    public void truncatedCompressedFileFailsTheImport(@TempDir Path tempDir) throws IOException {
+        Path plainFile = Path.of(PurchaseTrackerTest.class.getResource("/purchases/20211001/webshop.txt").getPath());
+        Path compressedFile = tempDir.resolve("20211001/webshop.txt.gz");
+        Files.createDirectories(compressedFile.getParent());
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(compressedFile))) {
+            Files.copy(plainFile, output);
+        }
+        byte[] compressed = Files.readAllBytes(compressedFile);
+        Files.write(compressedFile, Arrays.copyOf(compressed, compressed.length / 2));
+
+        assertThrows(RuntimeException.class, () -> purchaseTracker.importPurchasesFromVault(tempDir));
+    }
+
+    @Test
+    public void publishedCatalogVersionsDoNotChangeEarlierRevenue() {
+        ProductCatalog oldCatalog = purchaseTracker.getCatalog();
+        long oldRevenueCents = purchaseTracker.getTotalRevenueCents();
+
+        List<Product> newProducts = new ArrayList<>();
+        for (Product product : oldCatalog.getProducts()) {
+            newProducts.add(Product.withPriceCents(product.getBarcode(), product.getTitle(),
+                    2 * product.getPriceCents()));
+        }
+        ProductCatalog newCatalog = purchaseTracker.publishCatalog(newProducts);
+
+        assertEquals(oldCatalog.getVersion() + 1, newCatalog.getVersion());
+        assertSame(newCatalog, purchaseTracker.getCatalog());
+        Product oldProduct = oldCatalog.getProducts().get(0);
+        assertEquals(oldProduct.getPriceCents(), oldCatalog.findProduct(oldProduct.getBarcode()).getPriceCents());
+        assertEquals(2 * oldProduct.getPriceCents(), newCatalog.findProduct(oldProduct.getBarcode()).getPriceCents());
+        assertEquals(oldRevenueCents, purchaseTracker.getTotalRevenueCents());
+
+        // purchases that are imported after the publication are attributed to the new prices
+        purchaseTracker.importPurchasesFromVault("/purchases");
+        assertEquals(2 * oldRevenueCents, purchaseTracker.getTotalRevenueCents());
+        assertEquals(16730, purchaseTracker.getTotalVolume());
+    }
+
+    @Test
+    public void importStatisticsAccountForAllLines() {
+        ImportStatistics statistics = purchaseTracker.getImportStatistics();
+        assertEquals(14, statistics.getFiles().size());
+        assertEquals(statistics.getNumLines(), statistics.getNumPurchases()
+                + statistics.getNumParseFailures(Purchase.ParseFailure.MISSING_FIELDS)
+                + statistics.getNumParseFailures(Purchase.ParseFailure.INVALID_NUMBER)
+                + statistics.getNumUnknownBarcodes());
+        assertEquals(417, statistics.getNumLines());
+        assertEquals(2, statistics.getNumUnknownBarcodes());
+        assertTrue(statistics.getNumFilterRejects() <= statistics.getNumUnknownBarcodes());
+        assertEquals(statistics.getFiles().size(), Arrays.stream(statistics.getMergeNanosHistogram()).sum());
+        assertTrue(statistics.getNumBytes() > 0);
+        assertEquals(3, statistics.getSlowestFiles(3).size());
     }
 }
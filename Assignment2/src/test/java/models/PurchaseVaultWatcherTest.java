@@ -0,0 +1,97 @@
+package models;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PurchaseVaultWatcherTest {
+
+    @TempDir
+    Path vault;
+
+    PurchaseTracker purchaseTracker;
+    PurchaseVaultWatcher watcher;
+
+    @BeforeEach
+    private void setup() throws IOException {
+        purchaseTracker = new PurchaseTracker();
+        purchaseTracker.importProductsFromVault("/products.txt");
+        watcher = new PurchaseVaultWatcher(purchaseTracker, vault);
+    }
+
+    @AfterEach
+    private void tearDown() throws IOException {
+        watcher.close();
+    }
+
+    private long totalCount() {
+        return purchaseTracker.getPurchases().stream().mapToLong(Purchase::getCount).sum();
+    }
+
+    private void append(Path file, String text) throws IOException {
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void catchUpMergesOnlyCompleteNewLines() throws IOException {
+        Path branch = Files.createDirectories(vault.resolve("20211003/Amsterdam")).resolve("vijzelstraat.txt");
+        append(branch, "8712100516382, 10\n8712100516381, 6\n8718907136068, 3");
+
+        assertEquals(1, watcher.catchUp());
+        assertEquals(2, purchaseTracker.getPurchases().size());
+        assertEquals(16, totalCount());
+
+        append(branch, "2\n8712100516382, 5\n");
+        assertEquals(1, watcher.catchUp());
+        assertEquals(3, purchaseTracker.getPurchases().size());
+        assertEquals(53, totalCount());
+
+        assertEquals(0, watcher.catchUp());
+        assertEquals(53, totalCount());
+
+        assertEquals(1, purchaseTracker.getImportStatistics().getFiles().size());
+        assertEquals(4, purchaseTracker.getImportStatistics().getFiles().get(0).getNumLines());
+        assertEquals(Files.size(branch), purchaseTracker.getImportStatistics().getFiles().get(0).getNumBytes());
+    }
+
+    @Test
+    public void pollChangesPicksUpNewDirectoriesAndFiles() throws IOException, InterruptedException {
+        append(vault.resolve("webshop.txt"), "8712100516382, 10\n");
+        watcher.catchUp();
+        assertEquals(10, totalCount());
+
+        Path branch = Files.createDirectories(vault.resolve("20211004/Rotterdam")).resolve("lijnbaan.txt");
+        append(branch, "8712100516382, 7\n");
+        append(vault.resolve("notes.csv"), "8712100516382, 100\n");
+
+        for (int attempt = 0; attempt < 20 && totalCount() < 17; attempt++) {
+            watcher.pollChanges(500, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(17, totalCount());
+        assertEquals(1, purchaseTracker.getPurchases().size());
+    }
+
+    @Test
+    public void archivedVaultCannotBeWatched(@TempDir Path archiveDirectory) throws IOException {
+        Path archive = archiveDirectory.resolve("vault.zip");
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(archive))) {
+            output.putNextEntry(new ZipEntry("webshop.txt"));
+            output.write("8712100516382, 10\n".getBytes(StandardCharsets.UTF_8));
+            output.closeEntry();
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new PurchaseVaultWatcher(purchaseTracker, archive));
+    }
+}
@@ -0,0 +1,66 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SalesCubeTest {
+
+    PurchaseTracker purchaseTracker;
+    SalesCube salesCube;
+
+    @BeforeEach
+    private void setup() {
+        purchaseTracker = new PurchaseTracker();
+        purchaseTracker.importProductsFromVault("/products.txt");
+        purchaseTracker.importPurchasesFromVault("/purchases");
+        salesCube = purchaseTracker.getSalesCube();
+    }
+
+    @Test
+    public void vaultPathsProvideTheLocation() {
+        VaultLocation branch = VaultLocation.fromVaultPath(Path.of("20211001", "Amsterdam", "vijzelstraat.txt"));
+        assertEquals(new VaultLocation("20211001", "Amsterdam", "vijzelstraat"), branch);
+        VaultLocation webshop = VaultLocation.fromVaultPath(Path.of("20211001", "webshop.txt"));
+        assertEquals(new VaultLocation("20211001", "", "webshop"), webshop);
+    }
+
+    @Test
+    public void rollupsAddUpToTheTotals() {
+        assertEquals(16730, salesCube.volume(null, null, null, null));
+        assertEquals(salesCube.volume(null, null, null, null),
+                salesCube.volume("20211001", null, null, null) + salesCube.volume("20211002", null, null, null));
+
+        Map<String, Long> revenuePerCity = salesCube.revenuePer(SalesCube.Dimension.CITY, "20211002", null, null, null);
+        assertEquals(2, revenuePerCity.size());
+        assertEquals(salesCube.revenueCents("20211002", null, null, null),
+                revenuePerCity.values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(salesCube.revenueCents("20211002", "Rotterdam", null, null),
+                salesCube.revenueCents("20211002", "Rotterdam", "coolsingel", null)
+                        + salesCube.revenueCents("20211002", "Rotterdam", "lijnbaan", null));
+
+        for (Purchase purchase : purchaseTracker.getPurchases()) {
+            assertEquals(purchase.getCount(), salesCube.volume(null, null, null, purchase.getBarcode()));
+        }
+        assertEquals(0, salesCube.volume("20211003", null, null, null));
+    }
+
+    @Test
+    public void topProductsPerBranch() {
+        List<Purchase> tops = salesCube.topProducts(3,
+                Comparator.comparing(Purchase::getCount).reversed(), null, null, "webshop");
+        assertEquals(3, tops.size());
+        assertEquals(3344234532002L, tops.get(0).getBarcode());
+        assertEquals(108, tops.get(0).getCount());
+        assertTrue(tops.get(1).getCount() <= tops.get(0).getCount());
+        for (Purchase top : tops) {
+            assertEquals(salesCube.revenueCents(null, null, "webshop", top.getBarcode()), top.getRevenueCents());
+        }
+    }
+}
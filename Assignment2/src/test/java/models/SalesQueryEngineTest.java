@@ -0,0 +1,99 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SalesQueryEngineTest {
+
+    PurchaseTracker purchaseTracker;
+
+    @BeforeEach
+    private void setup() {
+        purchaseTracker = new PurchaseTracker();
+        purchaseTracker.importProductsFromVault("/products.txt");
+        purchaseTracker.importPurchasesFromVault("/purchases");
+    }
+
+    @Test
+    public void totalsOfAllPurchasesMatchTheTracker() {
+        List<SalesQueryEngine.Row> rows = purchaseTracker.query(
+                SalesQuery.builder().groupBy(SalesQuery.Grouping.ALL).build());
+        assertEquals(1, rows.size());
+        assertEquals(purchaseTracker.getTotalVolume(), rows.get(0).getVolume());
+        assertEquals(purchaseTracker.getTotalRevenueCents(), rows.get(0).getRevenueCents());
+        assertEquals(61, rows.get(0).getNumProducts());
+    }
+
+    @Test
+    public void productRankingMatchesFindTops() {
+        List<SalesQueryEngine.Row> rows = purchaseTracker.query(SalesQuery.builder()
+                .rankBy(SalesQuery.Measure.REVENUE).limit(5).build());
+        List<Purchase> tops = purchaseTracker.findTopsByKey(5, Purchase::getRevenueCents, true);
+        assertEquals(5, rows.size());
+        for (int rank = 0; rank < rows.size(); rank++) {
+            assertEquals(tops.get(rank).getRevenueCents(), rows.get(rank).getRevenueCents());
+        }
+    }
+
+    @Test
+    public void filtersAndBrandsSelectTheMatchingProducts() {
+        List<SalesQueryEngine.Row> brands = purchaseTracker.query(SalesQuery.builder()
+                .titlePrefix("Calvé").groupBy(SalesQuery.Grouping.BRAND).build());
+        assertEquals(1, brands.size());
+        assertEquals("Calvé", brands.get(0).getGroup());
+
+        long calveVolume = 0;
+        for (Purchase purchase : purchaseTracker.getPurchases()) {
+            if (purchase.getProduct().getTitle().startsWith("Calvé")) calveVolume += purchase.getCount();
+        }
+        assertEquals(calveVolume, brands.get(0).getVolume());
+
+        long barcode = purchaseTracker.getPurchases().get(0).getBarcode();
+        List<SalesQueryEngine.Row> single = purchaseTracker.query(SalesQuery.builder()
+                .barcodeRange(barcode, barcode).build());
+        assertEquals(1, single.size());
+        assertEquals(purchaseTracker.getPurchases().get(0).getCount(), single.get(0).getVolume());
+        assertEquals("Calvé", SalesQueryEngine.brandOf(" Calvé Pindakaas 650g"));
+    }
+
+    @Test
+    public void barcodeRangeCoversTheSortedAndUnsortedPurchases() {
+        List<Purchase> purchases = purchaseTracker.getPurchases();
+        long fromBarcode = purchases.get(10).getBarcode(), toBarcode = purchases.get(20).getBarcode();
+        // an unsorted purchase within the range, after the sorted section
+        purchases.add(new Purchase(purchases.get(15).getProduct(), 7));
+
+        List<SalesQueryEngine.Row> rows = purchaseTracker.query(SalesQuery.builder()
+                .barcodeRange(fromBarcode, toBarcode).groupBy(SalesQuery.Grouping.ALL).build());
+        long expectedVolume = purchases.stream()
+                .filter(purchase -> fromBarcode <= purchase.getBarcode() && purchase.getBarcode() <= toBarcode)
+                .mapToLong(Purchase::getCount).sum();
+        assertEquals(12, rows.get(0).getNumProducts());
+        assertEquals(expectedVolume, rows.get(0).getVolume());
+
+        assertTrue(purchaseTracker.query(SalesQuery.builder()
+                .barcodeRange(Long.MAX_VALUE - 1, Long.MAX_VALUE).groupBy(SalesQuery.Grouping.ALL).build()).isEmpty());
+    }
+
+    @Test
+    public void cachedResultsAreInvalidatedByMerges() {
+        SalesQuery query = SalesQuery.builder().groupBy(SalesQuery.Grouping.ALL).build();
+        SalesQueryEngine engine = purchaseTracker.getQueryEngine();
+        List<SalesQueryEngine.Row> first = purchaseTracker.query(query);
+        assertSame(first, purchaseTracker.query(SalesQuery.builder().groupBy(SalesQuery.Grouping.ALL).build()));
+        assertEquals(1, engine.getNumCacheHits());
+
+        Purchase purchase = purchaseTracker.getPurchases().get(0);
+        purchaseTracker.getPurchases().set(0, new Purchase(purchase.getProduct(), purchase.getCount() + 10));
+        List<SalesQueryEngine.Row> second = purchaseTracker.query(query);
+        assertNotSame(first, second);
+        assertEquals(first.get(0).getVolume() + 10, second.get(0).getVolume());
+        assertEquals(2, engine.getNumCacheMisses());
+
+        assertThrows(IllegalArgumentException.class, () -> SalesQuery.builder().barcodeRange(2, 1).build());
+    }
+}
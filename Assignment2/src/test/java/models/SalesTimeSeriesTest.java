@@ -0,0 +1,66 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SalesTimeSeriesTest {
+
+    SalesTimeSeries timeSeries;
+    LocalDate start = LocalDate.of(2019, 1, 1);
+
+    @BeforeEach
+    private void setup() {
+        timeSeries = new SalesTimeSeries();
+    }
+
+    @Test
+    public void rangeQueriesMatchTheDailyVolumes() {
+        long[][] expected = new long[3][1000];
+        Random random = new Random(44);
+        for (int index = 0; index < 5000; index++) {
+            int barcode = random.nextInt(3);
+            // mostly ascending days, with some late arrivals of older days
+            int day = random.nextInt(10) == 0 ? random.nextInt(1000) : Math.min(999, index / 5);
+            int volume = random.nextInt(20) - 2;
+            expected[barcode][day] += volume;
+            timeSeries.add(barcode, start.toEpochDay() + day, volume);
+        }
+
+        for (int barcode = 0; barcode < 3; barcode++) {
+            assertArrayEquals(expected[barcode], timeSeries.dailyVolumes(barcode, start, start.plusDays(999)));
+            for (int query = 0; query < 50; query++) {
+                int from = random.nextInt(1000);
+                int to = from + random.nextInt(1000 - from);
+                long volume = 0;
+                for (int day = from; day <= to; day++) volume += expected[barcode][day];
+                assertEquals(volume, timeSeries.volume(barcode, start.plusDays(from), start.plusDays(to)));
+            }
+        }
+        assertEquals(0, timeSeries.volume(42, start, start.plusDays(999)));
+    }
+
+    @Test
+    public void trackerCollectsTheDatesOfTheVault() {
+        PurchaseTracker purchaseTracker = new PurchaseTracker();
+        purchaseTracker.importProductsFromVault("/products.txt");
+        purchaseTracker.importPurchasesFromVault("/purchases");
+        SalesTimeSeries salesTimeSeries = purchaseTracker.getSalesTimeSeries();
+        SalesCube salesCube = purchaseTracker.getSalesCube();
+
+        LocalDate first = LocalDate.of(2021, 10, 1);
+        LocalDate second = LocalDate.of(2021, 10, 2);
+        assertEquals(61, salesTimeSeries.getNumBarcodes());
+        for (Purchase purchase : purchaseTracker.getPurchases()) {
+            long barcode = purchase.getBarcode();
+            assertEquals(purchase.getCount(), salesTimeSeries.volume(barcode, first, second));
+            long[] dailyVolumes = salesTimeSeries.dailyVolumes(barcode, first, second);
+            assertEquals(salesCube.volume("20211001", null, null, barcode), dailyVolumes[0]);
+            assertEquals(salesCube.volume("20211002", null, null, barcode), dailyVolumes[1]);
+        }
+    }
+}
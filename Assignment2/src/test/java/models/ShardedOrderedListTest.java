@@ -0,0 +1,108 @@
+package models;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedOrderedListTest {
+
+    // every item is a pair of a key and a count
+    ShardedOrderedList<long[]> shardedList;
+
+    @BeforeEach
+    private void setup() {
+        shardedList = new ShardedOrderedList<>(Comparator.comparingLong((long[] item) -> item[0]),
+                new long[]{Long.MIN_VALUE, 100, 200, 300}, item -> item[0],
+                (item1, item2) -> {
+                    item1[1] += item2[1];
+                    return item1;
+                });
+        shardedList.registerAggregate("count", item -> item[1]);
+    }
+
+    @AfterEach
+    private void cleanup() {
+        shardedList.close();
+    }
+
+    @Test
+    public void keysAreRoutedToTheShardOfTheirRange() {
+        assertEquals(4, shardedList.getNumShards());
+        assertEquals(0, shardedList.shardOf(-5));
+        assertEquals(0, shardedList.shardOf(99));
+        assertEquals(1, shardedList.shardOf(100));
+        assertEquals(2, shardedList.shardOf(299));
+        assertEquals(3, shardedList.shardOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void concurrentAddsMatchSequentialTotals() throws Exception {
+        Map<Long, Long> expected = new TreeMap<>();
+        List<List<long[]>> batches = new ArrayList<>();
+        Random random = new Random(49);
+        for (int batch = 0; batch < 40; batch++) {
+            List<long[]> items = new ArrayList<>();
+            for (int index = 0; index < 250; index++) {
+                long key = random.nextInt(400);
+                long count = 1 + random.nextInt(10);
+                expected.merge(key, count, Long::sum);
+                items.add(new long[]{key, count});
+            }
+            batches.add(items);
+        }
+
+        AtomicInteger numMerged = new AtomicInteger();
+        AtomicInteger numRouted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> adds = new ArrayList<>();
+            for (List<long[]> items : batches) {
+                adds.add(executor.submit(() -> numRouted.addAndGet(
+                        shardedList.addAll(items, nanos -> numMerged.incrementAndGet()))));
+            }
+            for (Future<?> add : adds) {
+                add.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        shardedList.close();
+
+        assertEquals(numRouted.get(), numMerged.get());
+        assertEquals(expected.size(), shardedList.size());
+        assertEquals(expected.values().stream().mapToLong(Long::longValue).sum(), shardedList.getAggregate("count"));
+
+        // the concatenation of the shards is ordered by key
+        List<long[]> merged = new ArrayList<>();
+        shardedList.copyTo(merged);
+        int index = 0;
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getKey(), merged.get(index)[0]);
+            assertEquals(entry.getValue(), merged.get(index)[1]);
+            index++;
+        }
+        assertThrows(IllegalStateException.class, () -> shardedList.addAll(List.of(new long[]{1, 1}), nanos -> {}));
+    }
+
+    @Test
+    public void lowerBoundsSplitKeysEvenly() {
+        long[] keys = {1, 2, 3, 4, 5, 6, 7, 8};
+        assertArrayEquals(new long[]{Long.MIN_VALUE, 3, 5, 7}, ShardedOrderedList.lowerBoundsOf(keys, 4));
+        // fewer distinct keys than shards
+        assertArrayEquals(new long[]{Long.MIN_VALUE, 1, 2}, ShardedOrderedList.lowerBoundsOf(new long[]{1, 2}, 8));
+        assertArrayEquals(new long[]{Long.MIN_VALUE}, ShardedOrderedList.lowerBoundsOf(new long[0], 4));
+    }
+}
@@ -0,0 +1,75 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpaceSavingSketchTest {
+
+    SpaceSavingSketch sketch;
+
+    @BeforeEach
+    private void setup() {
+        sketch = new SpaceSavingSketch(50);
+    }
+
+    @Test
+    public void countsAreExactWhileAllKeysFit() {
+        sketch.add(11, 3);
+        sketch.add(22, 5);
+        sketch.add(11, 4);
+        sketch.add(33, 0);
+
+        List<SpaceSavingSketch.HeavyHitter> tops = sketch.topK(5);
+        assertEquals(2, tops.size());
+        assertEquals(11, tops.get(0).getKey());
+        assertEquals(7, tops.get(0).getCount());
+        assertEquals(0, tops.get(0).getError());
+        assertEquals(5, sketch.estimate(22));
+        assertEquals(0, sketch.getMaxError());
+        assertEquals(12, sketch.getTotalWeight());
+    }
+
+    @Test
+    public void heavyHittersOfASkewedStreamAreFoundWithinTheErrorBound() {
+        Map<Long, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        for (int index = 0; index < 100000; index++) {
+            // a few heavy keys on top of a long tail of light keys
+            long key = random.nextInt(4) == 0 ? random.nextInt(5) : 1000 + random.nextInt(20000);
+            long weight = 1 + random.nextInt(3);
+            exact.merge(key, weight, Long::sum);
+            sketch.add(key, weight);
+        }
+
+        long bound = sketch.getTotalWeight() / sketch.getCapacity();
+        assertTrue(sketch.getMaxError() <= bound);
+        List<SpaceSavingSketch.HeavyHitter> tops = sketch.topK(5);
+        assertEquals(5, tops.size());
+        for (SpaceSavingSketch.HeavyHitter hitter : tops) {
+            assertTrue(hitter.getKey() < 5, "unexpected top key " + hitter);
+            long trueWeight = exact.get(hitter.getKey());
+            assertTrue(hitter.getGuaranteedCount() <= trueWeight && trueWeight <= hitter.getCount());
+            assertTrue(hitter.getCount() - trueWeight <= bound);
+        }
+    }
+
+    @Test
+    public void trackerFeedsTheSketchOnImport() {
+        PurchaseTracker purchaseTracker = new PurchaseTracker();
+        purchaseTracker.importProductsFromVault("/products.txt");
+        purchaseTracker.importPurchasesFromVault("/purchases");
+
+        assertEquals(16730, purchaseTracker.getTopSellers().getTotalWeight());
+        Purchase best = purchaseTracker.findTopsByKey(1, Purchase::getCount, true).get(0);
+        SpaceSavingSketch.HeavyHitter approximateBest = purchaseTracker.findApproximateTops(1).get(0);
+        assertEquals(best.getBarcode(), approximateBest.getKey());
+        assertEquals(best.getCount(), approximateBest.getCount());
+    }
+}
@@ -0,0 +1,60 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VaultGeneratorTest {
+
+    @TempDir
+    Path vault;
+    VaultGenerator generator;
+
+    @BeforeEach
+    private void setup() {
+        generator = new VaultGenerator().setNumProducts(500).setNumCities(3)
+                .setNumBranchesPerCity(2).setNumDays(4).setSeed(45);
+    }
+
+    @Test
+    public void generatedVaultCanBeImported() throws IOException {
+        generator.generate(vault, 10001);
+        assertEquals(24, generator.getNumFiles());
+        assertTrue(Files.isRegularFile(vault.resolve("purchases/20211004/Utrecht/branch1.txt")));
+
+        PurchaseTracker purchaseTracker = new PurchaseTracker();
+        purchaseTracker.importProductsFromVault(vault.resolve("products.txt"));
+        purchaseTracker.importPurchasesFromVault(vault.resolve("purchases"));
+
+        ImportStatistics statistics = purchaseTracker.getImportStatistics();
+        assertEquals(500, purchaseTracker.getProducts().size());
+        assertEquals(24, statistics.getFiles().size());
+        assertEquals(10001, statistics.getNumLines());
+        assertEquals(10001, statistics.getNumPurchases() + statistics.getNumUnknownBarcodes());
+        assertTrue(statistics.getNumUnknownBarcodes() > 0);
+        assertEquals(3, purchaseTracker.getSalesCube()
+                .revenuePer(SalesCube.Dimension.CITY, "20211001", null, null, null).size());
+    }
+
+    @Test
+    public void popularityIsZipfSkewed() throws IOException {
+        generator.setUnknownBarcodeFraction(0).generate(vault, 20000);
+
+        PurchaseTracker purchaseTracker = new PurchaseTracker();
+        purchaseTracker.importProductsFromVault(vault.resolve("products.txt"));
+        purchaseTracker.importPurchasesFromVault(vault.resolve("purchases"));
+
+        // the best selling product of 500 takes about 15% of the lines with an exponent of 1
+        List<Purchase> tops = purchaseTracker.findTopsByKey(1, Purchase::getCount, true);
+        assertTrue(tops.get(0).getCount() > purchaseTracker.getTotalVolume() / 10);
+        assertEquals(0, VaultGenerator.sampleRank(new double[]{0.5, 1.0}, 0.25));
+        assertEquals(1, VaultGenerator.sampleRank(new double[]{0.5, 1.0}, 0.75));
+    }
+}
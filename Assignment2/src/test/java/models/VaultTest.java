@@ -0,0 +1,115 @@
+package models;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VaultTest {
+
+    @TempDir
+    Path tempDir;
+    Path plainVault;
+
+    @BeforeEach
+    private void setup() {
+        plainVault = Path.of(VaultTest.class.getResource("/purchases").getPath());
+    }
+
+    @Test
+    public void linesAreDecodedAcrossBufferBoundaries() throws IOException {
+        // a line that is longer than a buffer, with multi-byte characters on both sides of the buffer boundaries
+        String longLine = "é".repeat(50_000) + "€";
+        Path file = tempDir.resolve("lines.txt");
+        Files.writeString(file, "first\r\n\n  \n" + longLine + "\nlast without terminator", StandardCharsets.UTF_8);
+
+        List<String> lines = new ArrayList<>();
+        try (Vault vault = Vault.open(file)) {
+            vault.forEachLine(vault.getRoot(), lines::add);
+        }
+        assertEquals(List.of("first", longLine, "last without terminator"), lines);
+    }
+
+    @Test
+    public void compressedLinesMatchPlainLines() throws IOException {
+        Path plainFile = tempDir.resolve("branch.txt");
+        Path compressedFile = tempDir.resolve("branch.txt.gz");
+        Files.writeString(plainFile, "8712100340666, 2\n\n8719587231278, 5\r\n\n", StandardCharsets.UTF_8);
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(compressedFile))) {
+            Files.copy(plainFile, output);
+        }
+
+        List<String> plainLines = new ArrayList<>(), compressedLines = new ArrayList<>();
+        List<String> pipelinedLines = new ArrayList<>();
+        try (Vault vault = Vault.open(tempDir); DecompressionPipeline pipeline = new DecompressionPipeline(1)) {
+            vault.forEachLine(plainFile, plainLines::add);
+            vault.forEachLine(compressedFile, compressedLines::add);
+            pipeline.submit(vault, compressedFile).forEachLine(pipelinedLines::add);
+            // compressed files match by the name of their content
+            assertEquals(List.of(plainFile, compressedFile),
+                    vault.listFiles(tempDir, Pattern.compile("branch\\.txt")));
+        }
+        assertEquals(List.of("8712100340666, 2", "8719587231278, 5"), plainLines);
+        assertEquals(plainLines, compressedLines);
+        assertEquals(plainLines, pipelinedLines);
+    }
+
+    @Test
+    public void zippedVaultListsTheSameFilesAsDirectory() throws IOException {
+        Path archive = zip(plainVault, tempDir.resolve("purchases.zip"));
+        Pattern textFiles = Pattern.compile(".*\\.txt");
+
+        List<String> directoryLocations, archiveLocations;
+        try (Vault vault = Vault.open(plainVault)) {
+            directoryLocations = vault.listFiles(vault.getRoot(), textFiles).stream()
+                    .map(file -> vault.locationOf(file).toString()).collect(Collectors.toList());
+        }
+        try (Vault vault = Vault.open(archive)) {
+            archiveLocations = vault.listFiles(vault.getRoot(), textFiles).stream()
+                    .map(file -> vault.locationOf(file).toString()).collect(Collectors.toList());
+        }
+        assertEquals(14, directoryLocations.size());
+        assertEquals(directoryLocations, archiveLocations);
+    }
+
+    @Test
+    public void zippedVaultImportsLikeDirectory() throws IOException {
+        PurchaseTracker purchaseTracker = new PurchaseTracker();
+        purchaseTracker.importProductsFromVault("/products.txt");
+        purchaseTracker.importPurchasesFromVault(zip(plainVault, tempDir.resolve("purchases.zip")));
+
+        assertEquals(61, purchaseTracker.getPurchases().size());
+        assertEquals(16730, purchaseTracker.getTotalVolume());
+        assertEquals(417, purchaseTracker.getImportStatistics().getNumLines());
+    }
+
+    /**
+     * writes all files below the directory into a zip archive, with their paths relative to the directory
+     */
+    private static Path zip(Path directory, Path archive) throws IOException {
+        try (ZipOutputStream output = new ZipOutputStream(Files.newOutputStream(archive));
+             Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                output.putNextEntry(new ZipEntry(directory.relativize(file).toString().replace('\\', '/')));
+                Files.copy(file, output);
+                output.closeEntry();
+            }
+        }
+        return archive;
+    }
+}